@@ -0,0 +1,226 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.CommandPool;
+import com.daviipkp.stevecommandlib2.instance.InstantCommand;
+import com.daviipkp.stevecommandlib2.instance.ParallelCommand;
+import com.daviipkp.stevecommandlib2.instance.TriggeredCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine hot paths: submitting commands, ticking queued and triggered commands, and scheduling parallel commands
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EngineBenchmark {
+
+    private static final Runnable NOOP = () -> {};
+
+    private static InstantCommand instant() {
+        InstantCommand command = new InstantCommand();
+        command.setCommand(NOOP);
+        return command;
+    }
+
+    /**
+     * Three producers call addCommand while one thread drains the queue, like the tick thread would
+     */
+    @State(Scope.Group)
+    public static class Contended {
+        SteveCommandLib2 engine;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            engine = new SteveCommandLib2.Builder()
+                    .withThreads(1)
+                    .withQueueDrain(0, TimeUnit.MILLISECONDS, 4096)
+                    .build();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            engine.flushCommands();
+            engine.stop();
+        }
+    }
+
+    @Benchmark
+    @Group("addCommand")
+    @GroupThreads(3)
+    public void addCommand(Contended state) {
+        state.engine.addCommand(instant());
+    }
+
+    @Benchmark
+    @Group("addCommand")
+    @GroupThreads(1)
+    public void drain(Contended state) {
+        state.engine.tick(1);
+    }
+
+    /**
+     * One tick draining a whole burst of InstantCommands
+     */
+    @State(Scope.Thread)
+    public static class QueuedBurst {
+        @Param({"100", "10000"})
+        int population;
+
+        SteveCommandLib2 engine;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = new SteveCommandLib2.Builder()
+                    .withThreads(1)
+                    .withQueueDrain(0, TimeUnit.MILLISECONDS, Integer.MAX_VALUE)
+                    .build();
+        }
+
+        @Setup(Level.Invocation)
+        public void fill() {
+            for (int i = 0; i < population; i++) {
+                engine.addCommand(instant());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.stop();
+        }
+    }
+
+    @Benchmark
+    public void queuedTick(QueuedBurst state) {
+        state.engine.tick(1);
+    }
+
+    /**
+     * Steady-state submit, execute and complete of a pooled InstantCommand. Run with -prof gc to check it doesn't allocate
+     */
+    @State(Scope.Thread)
+    public static class Pooled {
+        SteveCommandLib2 engine;
+        CommandPool<InstantCommand> pool;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = new SteveCommandLib2.Builder().withThreads(1).build();
+            pool = new CommandPool<>(InstantCommand::new, 64).prefill(64);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.stop();
+        }
+    }
+
+    @Benchmark
+    public void pooledCycle(Pooled state) {
+        InstantCommand command = state.pool.obtain();
+        command.setCommand(NOOP);
+        state.engine.addCommand(command);
+        state.engine.tick(1);
+    }
+
+    /**
+     * A tick with a large idle trigger population, where only a few triggers are due each tick
+     */
+    @State(Scope.Thread)
+    public static class IdleTriggers {
+        @Param({"1000", "50000"})
+        int population;
+
+        SteveCommandLib2 engine;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = new SteveCommandLib2.Builder().withThreads(1).build();
+            for (int i = 0; i < population; i++) {
+                engine.addTrigger(new IdleTrigger(1000 + (i % 1000)));
+            }
+            engine.tick(0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.stop();
+        }
+    }
+
+    @Benchmark
+    public void triggeredTick(IdleTriggers state) {
+        state.engine.tick(1);
+    }
+
+    /**
+     * Round trip of a ParallelCommand: addCommand until its first frame runs on the pool
+     */
+    @State(Scope.Benchmark)
+    public static class Parallel {
+        SteveCommandLib2 engine;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            engine = new SteveCommandLib2.Builder().withThreads(4).withTargetTPS(100_000).build();
+            engine.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void parallelSchedule(Parallel state) throws InterruptedException {
+        OneFrame command = new OneFrame();
+        state.engine.addCommand(command);
+        command.done.await();
+    }
+
+    public static class IdleTrigger extends TriggeredCommand {
+        public IdleTrigger(long interval) {
+            setTimeBetweenChecks(interval);
+        }
+
+        @Override
+        public boolean checkTrigger() {
+            return false;
+        }
+
+        @Override
+        public void handleError(Exception e) {
+
+        }
+    }
+
+    public static class OneFrame extends ParallelCommand {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void execute(long delta) {
+            finish();
+            done.countDown();
+        }
+
+        @Override
+        public void handleError(Exception e) {
+
+        }
+    }
+}
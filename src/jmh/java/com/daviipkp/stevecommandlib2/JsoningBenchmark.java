@@ -0,0 +1,115 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.annotations.CommandDescribe;
+import com.daviipkp.stevecommandlib2.annotations.FieldDescribe;
+import com.daviipkp.stevecommandlib2.info.InfoSchema;
+import com.daviipkp.stevecommandlib2.info.InfoStack;
+import com.daviipkp.stevecommandlib2.instance.Command;
+import com.daviipkp.stevecommandlib2.instance.QueuedCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON and binary command round trip: parsing a registered command and serializing it back, plus InfoStack serialization
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class JsoningBenchmark {
+
+    private static final String JSON = "{\"type\": \"bench_heal\", \"target_name\": \"Steve\", \"amount\": 20, \"radius\": 4.5, \"silent\": false}";
+
+    private static final byte[] JSON_BYTES = JSON.getBytes(StandardCharsets.UTF_8);
+    private static final String JSON_TYPE_LAST = "{\"target_name\": \"Steve\", \"amount\": 20, \"radius\": 4.5, \"silent\": false, \"type\": \"bench_heal\"}";
+
+    private static final InfoSchema STACK_SCHEMA = InfoSchema.of("name", "hp", "mana", "x", "y", "alive");
+
+    private BenchHealCommand command;
+    private CommandCodec codec;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        Jsoning.registerCommandPackage(JsoningBenchmark.class.getPackageName());
+        command = (BenchHealCommand) Jsoning.createCommandFromJson(JSON);
+        codec = new CommandCodec(CommandTypeTable.fromRegistry());
+        binary = codec.toBinary(command);
+    }
+
+    @Benchmark
+    public Command createCommandFromJson() {
+        return Jsoning.createCommandFromJson(JSON);
+    }
+
+    @Benchmark
+    public Command createCommandFromJsonBytes() {
+        return Jsoning.createCommandFromJson(JSON_BYTES);
+    }
+
+    @Benchmark
+    public Command createCommandFromJsonTypeLast() {
+        return Jsoning.createCommandFromJson(JSON_TYPE_LAST);
+    }
+
+    @Benchmark
+    public String stringify() {
+        return Jsoning.stringify(command);
+    }
+
+    @Benchmark
+    public String stringifyCompact() {
+        return Jsoning.stringifyCompact(command);
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() {
+        return Jsoning.toJsonBytes(command);
+    }
+
+    @Benchmark
+    public Command createCommandFromBinary() {
+        return codec.createCommandFromBinary(binary);
+    }
+
+    @Benchmark
+    public byte[] toBinary() {
+        return codec.toBinary(command);
+    }
+
+    @Benchmark
+    public byte[] infoStackToJsonBytes() {
+        InfoStack stack = STACK_SCHEMA.newStack();
+        stack.fulfill(0, "Steve");
+        stack.fulfill(1, 20);
+        stack.fulfill(2, 35);
+        stack.fulfill(3, 12.5);
+        stack.fulfill(4, -3.25);
+        stack.fulfill(5, true);
+        return Jsoning.toJsonBytes(stack);
+    }
+
+    @CommandDescribe(name = "bench_heal", description = "Sample command used by the benchmarks")
+    public static class BenchHealCommand extends QueuedCommand {
+        @FieldDescribe(description = "Player to heal")
+        public String targetName;
+        @FieldDescribe
+        public int amount;
+        @FieldDescribe
+        public double radius;
+        @FieldDescribe
+        public boolean silent;
+
+        @Override
+        public void handleError(Exception e) {
+
+        }
+    }
+}
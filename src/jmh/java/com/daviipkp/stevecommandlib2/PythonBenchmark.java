@@ -0,0 +1,79 @@
+package com.daviipkp.stevecommandlib2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of PythonManager.executeScript and executeBatch calls on a warm interpreter pool.
+ * Needs Jep and its native library; when they are missing the setup fails with a message and JMH moves on
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PythonBenchmark {
+
+    private static final String SCRIPT = "bench_add.py";
+    private static final Map<String, Object> CONTEXT = Map.of("a", 20, "b", 22);
+    private static final int BATCH = 1000;
+
+    private final List<Map<String, Object>> batch = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        if (!jepAvailable()) {
+            throw new IllegalStateException("Jep is not available on this machine, skipping PythonBenchmark");
+        }
+        Path folder = Files.createTempDirectory("stevelib-bench");
+        Files.writeString(folder.resolve(SCRIPT), """
+                REQUIRED_VARS = ["a", "b"]
+
+                def main():
+                    return a + b
+                """);
+        PythonManager.setScriptFolder(folder.toFile());
+        PythonManager.loadScripts();
+        PythonManager.warmUp();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(Map.of("a", i, "b", 22));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        PythonManager.shutdownInterpreters();
+    }
+
+    @Benchmark
+    public void executeScript() {
+        PythonManager.executeScript(SCRIPT, CONTEXT);
+    }
+
+    // compare with BATCH times executeScript
+    @Benchmark
+    public List<Object> executeBatch() {
+        return PythonManager.executeBatch(SCRIPT, batch);
+    }
+
+    private static boolean jepAvailable() {
+        try {
+            new jep.SubInterpreter(new jep.JepConfig()).close();
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.Command;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Binary (CBOR) counterpart of the Jsoning command methods.
+ * Top-level field names and the command type are written as ids from a CommandTypeTable,
+ * everything below the top level is plain CBOR. Field naming and date handling are the same as Jsoning.
+ * Because of that, top-level names made only of digits can't be used (they would be read back as ids).
+ *
+ * <pre>
+ * CommandCodec codec = new CommandCodec(table);
+ * byte[] bytes = codec.toBinary(command);
+ * Command copy = codec.createCommandFromBinary(bytes);
+ * </pre>
+ *
+ * Codecs are immutable and thread safe.
+ */
+public class CommandCodec {
+
+    private final CommandTypeTable table;
+    private final ObjectMapper mapper;
+
+    public CommandCodec(CommandTypeTable table) {
+        if (table == null) {
+            throw new IllegalArgumentException("Type table cannot be null");
+        }
+        this.table = table;
+        this.mapper = Jsoning.binaryMapper();
+    }
+
+    public CommandTypeTable getTable() {
+        return table;
+    }
+
+    /**
+     * Serializes a command, or any other object, into CBOR.
+     * Commands get their type name written in, so createCommandFromBinary can rebuild them
+     *
+     * @param object The object to serialize
+     * @return The encoded bytes
+     * @throws RuntimeException if serialization fails
+     */
+    public byte[] toBinary(Object object) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        writeBinary(object, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Same as toBinary(Object), writing straight into a stream. The stream is not closed
+     */
+    public void writeBinary(Object object, OutputStream out) {
+        String type = object instanceof Command command ? typeOf(command) : null;
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            mapper.writeValue(new TableGenerator(generator, type), object);
+        } catch (IOException e) {
+            throw new RuntimeException("Error executing binary stringify.", e);
+        }
+    }
+
+    /**
+     * Creates a registered command from bytes written by toBinary
+     *
+     * @throws IllegalArgumentException if the bytes have no type or the type isn't registered
+     */
+    public Command createCommandFromBinary(byte[] bytes) {
+        try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+            return readCommand(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Error auto-parsing command from binary", e);
+        }
+    }
+
+    /**
+     * Same as createCommandFromBinary(byte[]), reading one command from a stream. The stream is not closed
+     */
+    public Command createCommandFromBinary(InputStream in) {
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return readCommand(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Error auto-parsing command from binary", e);
+        }
+    }
+
+    /**
+     * Parses bytes written by toBinary into a specific Java class
+     */
+    public <T> T parse(byte[] bytes, Class<T> clazz) {
+        try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+            return mapper.readValue(translate(parser).buffer().asParser(mapper), clazz);
+        } catch (IOException e) {
+            throw new RuntimeException("Error parsing binary to " + clazz.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * Parses bytes written by toBinary using a generic TypeReference
+     */
+    public <T> T parse(byte[] bytes, TypeReference<T> tr) {
+        try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+            return mapper.readValue(translate(parser).buffer().asParser(mapper), tr);
+        } catch (IOException e) {
+            throw new RuntimeException("Error parsing binary with TypeReference.", e);
+        }
+    }
+
+    /**
+     * Parses bytes written by toBinary into an existing object. Only the properties present in the bytes are replaced
+     */
+    public <T> T parseInto(byte[] bytes, T target) {
+        try (JsonParser parser = mapper.getFactory().createParser(bytes)) {
+            return mapper.readerForUpdating(target).readValue(translate(parser).buffer().asParser(mapper));
+        } catch (IOException e) {
+            throw new RuntimeException("Error parsing binary into " + target.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static String typeOf(Command command) {
+        String type = Jsoning.commandName(command.getClass());
+        if (type == null) {
+            throw new IllegalArgumentException("Command type '" + command.getClass().getName() + "' not registered.");
+        }
+        return type;
+    }
+
+    private Command readCommand(JsonParser parser) throws IOException {
+        Decoded decoded = translate(parser);
+        if (decoded.type() == null) {
+            throw new IllegalArgumentException("Binary command needs a type to identify the command");
+        }
+        Class<? extends Command> targetClass = Jsoning.commandClass(decoded.type());
+        if (targetClass == null) {
+            throw new IllegalArgumentException("Command type '" + decoded.type().toLowerCase() + "' not registered.");
+        }
+        // the type was already taken out, so the fields bind straight into the class
+        try (JsonParser fields = decoded.buffer().asParser(mapper)) {
+            fields.nextToken();
+            return Jsoning.readerFor(targetClass).readValue(fields);
+        }
+    }
+
+    private record Decoded(TokenBuffer buffer, String type) {}
+
+    /**
+     * Copies one value into a buffer, turning the top-level field ids back into names
+     * and taking out the command type
+     */
+    private Decoded translate(JsonParser parser) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        JsonToken token = parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            if (token != null) buffer.copyCurrentStructure(parser);
+            return new Decoded(buffer, null);
+        }
+
+        String type = null;
+        buffer.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+
+            Integer id = fieldId(name);
+            if (id != null && id == CommandTypeTable.TYPE_FIELD_ID) {
+                type = parser.currentToken() == JsonToken.VALUE_NUMBER_INT ? typeName(parser.getIntValue()) : parser.getText();
+                continue;
+            }
+            String field = id != null ? table.fieldName(id) : null;
+            buffer.writeFieldName(field != null ? field : name);
+            buffer.copyCurrentStructure(parser);
+        }
+        buffer.writeEndObject();
+        return new Decoded(buffer, type);
+    }
+
+    // CBOR integer keys reach the parser as their decimal text
+    private static Integer fieldId(String name) {
+        if (name.isEmpty() || name.length() > 9) return null;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') return null;
+        }
+        return Integer.parseInt(name);
+    }
+
+    private String typeName(int id) {
+        String type = table.typeName(id);
+        if (type == null) {
+            throw new IllegalArgumentException("Type id " + id + " is not in the type table.");
+        }
+        return type;
+    }
+
+    /**
+     * Writes top-level field names as table ids and puts the command type first
+     */
+    private final class TableGenerator extends JsonGeneratorDelegate {
+
+        private final String type;
+
+        TableGenerator(JsonGenerator delegate, String type) {
+            super(delegate, false);
+            this.type = type;
+        }
+
+        @Override
+        public void writeStartObject() throws IOException {
+            boolean root = getOutputContext().inRoot();
+            delegate.writeStartObject();
+            if (root) writeType();
+        }
+
+        @Override
+        public void writeStartObject(Object forValue) throws IOException {
+            boolean root = getOutputContext().inRoot();
+            delegate.writeStartObject(forValue);
+            if (root) writeType();
+        }
+
+        @Override
+        public void writeStartObject(Object forValue, int size) throws IOException {
+            boolean root = getOutputContext().inRoot();
+            // the size goes into the CBOR map header, so it has to count the type entry
+            delegate.writeStartObject(forValue, root && type != null ? size + 1 : size);
+            if (root) writeType();
+        }
+
+        @Override
+        public void writeFieldName(String name) throws IOException {
+            int id = topLevel() ? table.fieldId(name) : -1;
+            if (id > 0) delegate.writeFieldId(id);
+            else delegate.writeFieldName(name);
+        }
+
+        @Override
+        public void writeFieldName(SerializableString name) throws IOException {
+            int id = topLevel() ? table.fieldId(name.getValue()) : -1;
+            if (id > 0) delegate.writeFieldId(id);
+            else delegate.writeFieldName(name);
+        }
+
+        private boolean topLevel() {
+            return getOutputContext().getParent() != null && getOutputContext().getParent().inRoot();
+        }
+
+        private void writeType() throws IOException {
+            if (type == null) return;
+            delegate.writeFieldId(CommandTypeTable.TYPE_FIELD_ID);
+            int id = table.typeId(type);
+            if (id >= 0) delegate.writeNumber(id);
+            else delegate.writeString(type);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.daviipkp.stevecommandlib2;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputed command registry, generated at compile time by CommandIndexProcessor
+ * and found through ServiceLoader. Jsoning uses it instead of scanning the classpath for the packages it covers
+ */
+public interface CommandIndex {
+
+    /**
+     * @return Lowercase command name to binary class name of every @CommandDescribe command
+     */
+    Map<String, String> commands();
+
+    /**
+     * @return Binary class name to the JSON that Jsoning.generateGuide returns for it
+     */
+    Map<String, String> guides();
+
+    /**
+     * @return Packages whose every command is in commands(), so Jsoning doesn't scan them.
+     *         Empty when the index only lists part of its package, e.g. after an incremental compile
+     */
+    default Set<String> coveredPackages() {
+        return Set.of();
+    }
+}
@@ -0,0 +1,145 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.Command;
+import com.daviipkp.stevecommandlib2.instance.QueuedCommand;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Streams batches of commands into an engine.
+ * The source can be NDJSON (one command object per line, or any whitespace between them) or a single top-level JSON array.
+ * Records are parsed one at a time, so a batch is never held in memory as a whole, and before adding a queued command
+ * the reader waits while the engine's global queue is over the configured depth (never more than its capacity).
+ * Triggers and parallel commands don't go through that queue and are added right away.
+ * A command the engine refuses is counted as failed and reported to the error handler; reading goes on.
+ *
+ * <pre>
+ * CommandIngestor.Result result = new CommandIngestor(engine)
+ *     .withMaxQueueDepth(10_000)
+ *     .onError((record, e) -&gt; log.warn("record " + record + " skipped", e))
+ *     .ingest(inputStream);
+ * </pre>
+ */
+public class CommandIngestor {
+
+    /**
+     * @param records  Records read from the source
+     * @param accepted Commands added to the engine
+     * @param failed   Records that could not be turned into a command or were refused by the engine
+     */
+    public record Result(long records, long accepted, long failed) {}
+
+    private final SteveCommandLib2 engine;
+    private int maxQueueDepth = Integer.MAX_VALUE;
+    private BiConsumer<Long, Exception> errorHandler = (record, e) ->
+            SteveCommandLib2.systemPrint("Skipping command record " + record + ": " + e.getMessage());
+
+    public CommandIngestor(SteveCommandLib2 engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine cannot be null");
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * @param depth Depth of the engine's global queue at which reading pauses until the engine catches up.
+     *              The queue's capacity caps it, so a bounded engine isn't fed past what it holds
+     */
+    public CommandIngestor withMaxQueueDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Max queue depth must be >= 1");
+        }
+        this.maxQueueDepth = depth;
+        return this;
+    }
+
+    /**
+     * @param handler Called with the 0-based record index and the cause for every record that is skipped
+     */
+    public CommandIngestor onError(BiConsumer<Long, Exception> handler) {
+        this.errorHandler = handler;
+        return this;
+    }
+
+    /**
+     * Reads every command from the stream. The stream is not closed
+     *
+     * @throws IOException if reading fails or the JSON is malformed (records before it are already in the engine)
+     * @throws InterruptedException if interrupted while waiting for queue space
+     */
+    public Result ingest(InputStream in) throws IOException, InterruptedException {
+        try (JsonParser parser = Jsoning.createParser(in)) {
+            return ingest(parser);
+        }
+    }
+
+    /**
+     * Same as ingest(InputStream), for character sources
+     */
+    public Result ingest(Reader in) throws IOException, InterruptedException {
+        try (JsonParser parser = Jsoning.createParser(in)) {
+            return ingest(parser);
+        }
+    }
+
+    /**
+     * Same as ingest(InputStream), for NIO channels. The channel is not closed
+     */
+    public Result ingest(ReadableByteChannel channel) throws IOException, InterruptedException {
+        return ingest(Channels.newInputStream(channel));
+    }
+
+    private Result ingest(JsonParser parser) throws IOException, InterruptedException {
+        long records = 0;
+        long accepted = 0;
+        long failed = 0;
+
+        JsonToken token = parser.nextToken();
+        boolean array = token == JsonToken.START_ARRAY;
+        if (array) {
+            token = parser.nextToken();
+        }
+
+        while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+            // the record is copied first, so a bad record never leaves the parser in the middle of an object
+            TokenBuffer record = new TokenBuffer(parser);
+            record.copyCurrentStructure(parser);
+            long index = records++;
+
+            try {
+                Command command;
+                try (JsonParser recordParser = record.asParser(parser.getCodec())) {
+                    command = Jsoning.readCommand(recordParser);
+                }
+                if (command instanceof QueuedCommand) {
+                    awaitQueueSpace();
+                }
+                if (!engine.offerCommand(command)) {
+                    throw new RejectedExecutionException("The engine refused " + command.getID() + ", its queue is full");
+                }
+                accepted++;
+            } catch (IllegalArgumentException | IOException | RejectedExecutionException e) {
+                failed++;
+                errorHandler.accept(index, e);
+            }
+            token = parser.nextToken();
+        }
+        return new Result(records, accepted, failed);
+    }
+
+    private void awaitQueueSpace() throws InterruptedException {
+        if (!engine.awaitQueueBelow(maxQueueDepth)) {
+            Thread.interrupted();
+            throw new InterruptedException();
+        }
+    }
+}
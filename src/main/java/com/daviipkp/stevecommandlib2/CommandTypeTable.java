@@ -0,0 +1,156 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.Command;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Numbers command type names and top-level field names, so binary messages carry small integers instead of strings.
+ * Both ends of a connection must use the same table: build it on one side with fromRegistry(),
+ * send toBytes() once when the connection opens, and load it on the other side with fromBytes().
+ * Compare getFingerprint() to check two tables match.
+ * Names missing from the table still work, they are just sent as text.
+ */
+public final class CommandTypeTable {
+
+    // field id 0 is the command type, field names start at 1
+    static final int TYPE_FIELD_ID = 0;
+
+    private final List<String> types;
+    private final List<String> fields;
+    private final Map<String, Integer> typeIds;
+    private final Map<String, Integer> fieldIds;
+    private final long fingerprint;
+
+    private CommandTypeTable(List<String> types, List<String> fields) {
+        this.types = List.copyOf(types);
+        this.fields = List.copyOf(fields);
+        this.typeIds = index(this.types, 0);
+        this.fieldIds = index(this.fields, 1);
+
+        CRC32 crc = new CRC32();
+        crc.update(String.join("\n", this.types).getBytes(StandardCharsets.UTF_8));
+        crc.update(0);
+        crc.update(String.join("\n", this.fields).getBytes(StandardCharsets.UTF_8));
+        this.fingerprint = crc.getValue();
+    }
+
+    /**
+     * Builds a table from every command currently registered in Jsoning, with the property names of each command.
+     * Call it after registering the command packages
+     *
+     * @param extraFields Other top-level names worth numbering, like InfoStack keys
+     */
+    public static CommandTypeTable fromRegistry(String... extraFields) {
+        ObjectMapper mapper = Jsoning.binaryMapper();
+        Map<String, Class<? extends Command>> registry = Jsoning.registeredCommands();
+
+        TreeSet<String> fields = new TreeSet<>(List.of(extraFields));
+        for (Class<? extends Command> clazz : registry.values()) {
+            JavaType type = mapper.constructType(clazz);
+            for (BeanPropertyDefinition property : mapper.getSerializationConfig().introspect(type).findProperties()) {
+                fields.add(property.getName());
+            }
+            for (BeanPropertyDefinition property : mapper.getDeserializationConfig().introspect(type).findProperties()) {
+                fields.add(property.getName());
+            }
+        }
+        return new CommandTypeTable(new ArrayList<>(new TreeSet<>(registry.keySet())), new ArrayList<>(fields));
+    }
+
+    /**
+     * @param types  Command type names, in id order
+     * @param fields Field names, in id order
+     */
+    public static CommandTypeTable of(Collection<String> types, Collection<String> fields) {
+        return new CommandTypeTable(new ArrayList<>(types), new ArrayList<>(fields));
+    }
+
+    /**
+     * Reads a table written by toBytes()
+     *
+     * @throws IllegalArgumentException if the bytes don't hold a table
+     */
+    public static CommandTypeTable fromBytes(byte[] bytes) {
+        try {
+            Wire wire = Jsoning.binaryMapper().readValue(bytes, Wire.class);
+            if (wire.types() == null || wire.fields() == null) {
+                throw new IllegalArgumentException("Bytes do not hold a command type table");
+            }
+            return new CommandTypeTable(wire.types(), wire.fields());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Bytes do not hold a command type table", e);
+        }
+    }
+
+    /**
+     * @return The table in CBOR, for sending to the other end
+     */
+    public byte[] toBytes() {
+        try {
+            return Jsoning.binaryMapper().writeValueAsBytes(new Wire(types, fields));
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing command type table.", e);
+        }
+    }
+
+    public List<String> getTypes() { return types; }
+    public List<String> getFields() { return fields; }
+
+    /**
+     * @return CRC32 of the type and field names, equal on both ends when the tables match
+     */
+    public long getFingerprint() { return fingerprint; }
+
+    /**
+     * @return The id of the type, or -1 if the table doesn't have it
+     */
+    int typeId(String type) {
+        Integer id = typeIds.get(type);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return The type name, or null if the id is out of range
+     */
+    String typeName(int id) {
+        return id >= 0 && id < types.size() ? types.get(id) : null;
+    }
+
+    /**
+     * @return The id of the field (from 1), or -1 if the table doesn't have it
+     */
+    int fieldId(String field) {
+        Integer id = fieldIds.get(field);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return The field name, or null if the id is out of range
+     */
+    String fieldName(int id) {
+        return id >= 1 && id <= fields.size() ? fields.get(id - 1) : null;
+    }
+
+    private static Map<String, Integer> index(List<String> names, int first) {
+        Map<String, Integer> ids = new HashMap<>(names.size() * 2);
+        for (int i = 0; i < names.size(); i++) {
+            ids.putIfAbsent(names.get(i), first + i);
+        }
+        return Collections.unmodifiableMap(ids);
+    }
+
+    private record Wire(List<String> types, List<String> fields) {}
+}
@@ -0,0 +1,82 @@
+package com.daviipkp.stevecommandlib2;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hot-path recorders for the engine metrics.
+ * The per-class lookup goes through a ClassValue, so after the first call for a class
+ * recording an execution doesn't hash, lock or allocate.
+ */
+final class EngineMetrics {
+
+    static final class CommandTimer {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong(0);
+    }
+
+    private final Map<Class<?>, CommandTimer> byClass = new ConcurrentHashMap<>();
+    private final ClassValue<CommandTimer> timers = new ClassValue<>() {
+        @Override
+        protected CommandTimer computeValue(Class<?> type) {
+            // computeIfAbsent so racing threads still end up with the same timer
+            return byClass.computeIfAbsent(type, k -> new CommandTimer());
+        }
+    };
+    private final LatencyHistogram ticks = new LatencyHistogram();
+    private final AtomicLong deadlinesMet = new AtomicLong(0);
+    private final AtomicLong deadlinesMissed = new AtomicLong(0);
+    private final LatencyHistogram lateness = new LatencyHistogram();
+
+    void recordCommand(Class<?> type, long nanos) {
+        timers.get(type).latency.record(nanos);
+    }
+
+    void recordFailure(Class<?> type) {
+        timers.get(type).failures.incrementAndGet();
+    }
+
+    void recordTick(long nanos) {
+        ticks.record(nanos);
+    }
+
+    /**
+     * @param latenessNanos How long after its deadline the command ended, negative or 0 if it was on time
+     */
+    void recordDeadline(long latenessNanos) {
+        if (latenessNanos > 0) {
+            deadlinesMissed.incrementAndGet();
+            lateness.record(latenessNanos);
+        } else {
+            deadlinesMet.incrementAndGet();
+        }
+    }
+
+    long deadlinesMet() {
+        return deadlinesMet.get();
+    }
+
+    long deadlinesMissed() {
+        return deadlinesMissed.get();
+    }
+
+    MetricsSnapshot.Latency deadlineLateness() {
+        return MetricsSnapshot.Latency.of(lateness);
+    }
+
+    MetricsSnapshot.Latency tickLatency() {
+        return MetricsSnapshot.Latency.of(ticks);
+    }
+
+    Map<String, MetricsSnapshot.CommandStats> commandStats() {
+        Map<String, MetricsSnapshot.CommandStats> stats = new TreeMap<>();
+        for (Map.Entry<Class<?>, CommandTimer> entry : byClass.entrySet()) {
+            CommandTimer timer = entry.getValue();
+            stats.put(entry.getKey().getName(), new MetricsSnapshot.CommandStats(
+                    MetricsSnapshot.Latency.of(timer.latency), timer.failures.get()));
+        }
+        return stats;
+    }
+}
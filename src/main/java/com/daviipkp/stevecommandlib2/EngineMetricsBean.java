@@ -0,0 +1,73 @@
+package com.daviipkp.stevecommandlib2;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * EngineMetricsMXBean backed by engine snapshots
+ */
+final class EngineMetricsBean implements EngineMetricsMXBean {
+
+    private final Supplier<MetricsSnapshot> source;
+
+    EngineMetricsBean(Supplier<MetricsSnapshot> source) {
+        this.source = source;
+    }
+
+    @Override public long getCommandsExecuted() { return source.get().commandsExecuted(); }
+    @Override public long getCommandsFailed() { return source.get().commandsFailed(); }
+    @Override public double getFailureRate() { return source.get().failureRate(); }
+
+    @Override public long getCommandsRejected() { return source.get().commandsRejected(); }
+    @Override public long getCommandsDropped() { return source.get().commandsDropped(); }
+    @Override public long getCommandsCallerRan() { return source.get().commandsCallerRan(); }
+
+    @Override public int getQueueDepth() { return source.get().queueDepth(); }
+    @Override public int getActiveLanes() { return source.get().activeLanes(); }
+    @Override public int getTriggerCount() { return source.get().triggerCount(); }
+    @Override public int getParallelRunning() { return source.get().parallelRunning(); }
+
+    @Override public int getPoolActiveThreads() { return source.get().poolActiveThreads(); }
+    @Override public double getPoolSaturation() { return source.get().poolSaturation(); }
+    @Override public int getPoolQueuedTasks() { return source.get().poolQueuedTasks(); }
+
+    @Override public long getTicks() { return source.get().ticks(); }
+    @Override public long getTickOverruns() { return source.get().tickOverruns(); }
+    @Override public long getTickMeanMicros() { return micros(source.get().tick().meanNanos()); }
+    @Override public long getTickP99Micros() { return micros(source.get().tick().p99Nanos()); }
+    @Override public long getTickMaxMicros() { return micros(source.get().tick().maxNanos()); }
+
+    @Override public long getDeadlinesMet() { return source.get().deadlinesMet(); }
+    @Override public long getDeadlinesMissed() { return source.get().deadlinesMissed(); }
+    @Override public long getDeadlineLatenessP99Micros() { return micros(source.get().deadlineLateness().p99Nanos()); }
+
+    @Override
+    public Map<String, Long> getCommandMeanMicros() {
+        return perCommand(stats -> micros(stats.latency().meanNanos()));
+    }
+
+    @Override
+    public Map<String, Long> getCommandP99Micros() {
+        return perCommand(stats -> micros(stats.latency().p99Nanos()));
+    }
+
+    @Override
+    public Map<String, Long> getCommandFailures() {
+        return perCommand(MetricsSnapshot.CommandStats::failures);
+    }
+
+    private Map<String, Long> perCommand(Function<MetricsSnapshot.CommandStats, Long> value) {
+        Map<String, Long> out = new TreeMap<>();
+        for (Map.Entry<String, MetricsSnapshot.CommandStats> entry : source.get().commands().entrySet()) {
+            out.put(entry.getKey(), value.apply(entry.getValue()));
+        }
+        return out;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,52 @@
+package com.daviipkp.stevecommandlib2;
+
+import java.util.Map;
+
+/**
+ * JMX view of the engine metrics, registered as com.daviipkp.stevecommandlib2:type=Engine,name=...
+ * when the engine is built with Builder.enableJmx
+ */
+public interface EngineMetricsMXBean {
+
+    long getCommandsExecuted();
+    long getCommandsFailed();
+    double getFailureRate();
+
+    long getCommandsRejected();
+    long getCommandsDropped();
+    long getCommandsCallerRan();
+
+    int getQueueDepth();
+    int getActiveLanes();
+    int getTriggerCount();
+    int getParallelRunning();
+
+    int getPoolActiveThreads();
+    double getPoolSaturation();
+    int getPoolQueuedTasks();
+
+    long getTicks();
+    long getTickOverruns();
+    long getTickMeanMicros();
+    long getTickP99Micros();
+    long getTickMaxMicros();
+
+    long getDeadlinesMet();
+    long getDeadlinesMissed();
+    long getDeadlineLatenessP99Micros();
+
+    /**
+     * @return Mean execution time per command class, in microseconds
+     */
+    Map<String, Long> getCommandMeanMicros();
+
+    /**
+     * @return 99th percentile execution time per command class, in microseconds
+     */
+    Map<String, Long> getCommandP99Micros();
+
+    /**
+     * @return Failures per command class
+     */
+    Map<String, Long> getCommandFailures();
+}
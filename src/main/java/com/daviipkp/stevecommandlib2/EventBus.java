@@ -0,0 +1,128 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.TriggeredCommand;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes published events to the triggers subscribed to them.
+ * Publishing is thread safe and only queues deliveries; the tick thread runs them,
+ * so a trigger is still never evaluated by two threads at once.
+ */
+final class EventBus {
+
+    record Delivery(TriggerHandle handle, String topic, Object payload) {}
+
+    private final Map<String, Set<TriggerHandle>> topicSubscribers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Set<TriggerHandle>> typeSubscribers = new ConcurrentHashMap<>();
+    private final Queue<Delivery> deliveries = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    // every class and interface an event type can be matched against, computed once per event class
+    private static final ClassValue<List<Class<?>>> HIERARCHY = new ClassValue<>() {
+        @Override
+        protected List<Class<?>> computeValue(Class<?> type) {
+            Set<Class<?>> all = new LinkedHashSet<>();
+            collect(type, all);
+            return List.copyOf(all);
+        }
+
+        private void collect(Class<?> type, Set<Class<?>> out) {
+            if (type == null || !out.add(type)) return;
+            collect(type.getSuperclass(), out);
+            for (Class<?> i : type.getInterfaces()) {
+                collect(i, out);
+            }
+        }
+    };
+
+    void subscribe(TriggerHandle handle) {
+        TriggeredCommand command = handle.getCommand();
+        for (String topic : command.getSubscribedTopics()) {
+            topicSubscribers.computeIfAbsent(topic, k -> ConcurrentHashMap.newKeySet()).add(handle);
+        }
+        for (Class<?> type : command.getSubscribedEventTypes()) {
+            typeSubscribers.computeIfAbsent(type, k -> ConcurrentHashMap.newKeySet()).add(handle);
+        }
+    }
+
+    void unsubscribe(TriggerHandle handle) {
+        TriggeredCommand command = handle.getCommand();
+        for (String topic : command.getSubscribedTopics()) {
+            Set<TriggerHandle> set = topicSubscribers.get(topic);
+            if (set != null) set.remove(handle);
+        }
+        for (Class<?> type : command.getSubscribedEventTypes()) {
+            Set<TriggerHandle> set = typeSubscribers.get(type);
+            if (set != null) set.remove(handle);
+        }
+    }
+
+    /**
+     * @return How many triggers were woken
+     */
+    int publish(String topic, Object payload) {
+        return enqueue(topicSubscribers.get(topic), topic, payload);
+    }
+
+    /**
+     * @return How many triggers were woken
+     */
+    int publish(Object event) {
+        int woken = 0;
+        for (Class<?> type : HIERARCHY.get(event.getClass())) {
+            woken += enqueue(typeSubscribers.get(type), null, event);
+        }
+        return woken;
+    }
+
+    private int enqueue(Set<TriggerHandle> subscribers, String topic, Object payload) {
+        if (subscribers == null || subscribers.isEmpty()) return 0;
+
+        int woken = 0;
+        for (TriggerHandle handle : subscribers) {
+            if (handle.isDone() || handle.isCancelled()) {
+                subscribers.remove(handle);
+                continue;
+            }
+            pending.incrementAndGet();
+            deliveries.offer(new Delivery(handle, topic, payload));
+            woken++;
+        }
+        return woken;
+    }
+
+    /**
+     * Moves the deliveries that were pending when called into out.
+     * Events published while they run are left for the next tick
+     */
+    void drain(List<Delivery> out) {
+        int count = pending.get();
+        if (count == 0) return;
+
+        int taken = 0;
+        Delivery d;
+        while (taken < count && (d = deliveries.poll()) != null) {
+            out.add(d);
+            taken++;
+        }
+        pending.addAndGet(-taken);
+    }
+
+    void clear() {
+        topicSubscribers.clear();
+        typeSubscribers.clear();
+        int removed = 0;
+        while (deliveries.poll() != null) {
+            removed++;
+        }
+        pending.addAndGet(-removed);
+    }
+}
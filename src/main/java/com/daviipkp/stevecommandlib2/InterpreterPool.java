@@ -0,0 +1,775 @@
+package com.daviipkp.stevecommandlib2;
+
+import jep.JepConfig;
+import jep.JepException;
+import jep.SubInterpreter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-lived Jep interpreters, each owned by its own worker thread (a SubInterpreter can only be used by the thread that created it).
+ * Every script is loaded once per interpreter into its own namespace, so one interpreter can hold many scripts;
+ * a call then only swaps the context variables and invokes main.
+ *
+ * <ul>
+ *   <li>size: at most this many interpreters, started on demand (or all at once by warmUp)</li>
+ *   <li>queue: at most maxQueued calls wait for an interpreter, the rejection policy decides what happens to the rest</li>
+ *   <li>timeout: a call past its deadline fails with TimeoutException, and a TimeoutError is raised inside the script to stop it</li>
+ *   <li>eviction: an interpreter idle for longer than the idle timeout is closed and its thread ends</li>
+ *   <li>recycle: an interpreter is replaced after maxCalls calls, or when it fails a health probe after an error</li>
+ * </ul>
+ */
+final class InterpreterPool {
+
+    private static final Logger LOGGER = Logger.getLogger(InterpreterPool.class.getName());
+
+    // runs once in every interpreter. Context variables arrive through jep.set (so they convert exactly like before)
+    // and are moved from the interpreter globals into the script namespace right before main is called
+    private static final String BOOTSTRAP = """
+            _steve_scripts = {}
+
+            def _steve_load(name, path):
+                ns = {'__name__': '__steve__', '__file__': path}
+                with open(path, encoding='utf-8') as f:
+                    code = compile(f.read(), path, 'exec')
+                exec(code, ns)
+                _steve_scripts[str(name)] = ns
+
+            def _steve_run(name, keys, timeout):
+                ns = _steve_scripts[str(name)]
+                g = globals()
+                for k in ns.pop('_steve_ctx', ()):
+                    ns.pop(k, None)
+                keys = tuple(str(k) for k in keys)
+                for k in keys:
+                    ns[k] = g.pop(k)
+                ns['_steve_ctx'] = keys
+                return _steve_call(ns['main'], timeout)
+
+            def _steve_batch(name, keys, contexts, timeout):
+                return _steve_call(lambda: _steve_run_batch(name, keys, contexts), timeout)
+
+            def _steve_run_batch(name, keys, contexts):
+                ns = _steve_scripts[str(name)]
+                g = globals()
+                for k in ns.pop('_steve_ctx', ()):
+                    ns.pop(k, None)
+                shared = {}
+                for k in keys:
+                    shared[str(k)] = ns[str(k)] = g.pop(str(k))
+                main = ns['main']
+                results = []
+                previous = ()
+                try:
+                    for i, ctx in enumerate(contexts):
+                        for k in previous:
+                            if k in shared:
+                                ns[k] = shared[k]
+                            else:
+                                ns.pop(k, None)
+                        previous = []
+                        for e in ctx.entrySet():
+                            k = str(e.getKey())
+                            ns[k] = e.getValue()
+                            previous.append(k)
+                        try:
+                            results.append(main())
+                        except Exception as ex:
+                            raise RuntimeError('context %d: %s' % (i, ex)) from ex
+                finally:
+                    for k in previous:
+                        if k not in shared:
+                            ns.pop(k, None)
+                    ns['_steve_ctx'] = tuple(shared)
+                return results
+
+            _steve_watch = None
+
+            class _SteveWatchdog:
+                # raises TimeoutError in the calling thread once its deadline passes, the only way to stop running Python code.
+                # The calling thread never takes a lock here, so the error can arrive at any point without leaving one held
+                def __init__(self):
+                    import _thread, ctypes, threading, time
+                    self._raise = ctypes.pythonapi.PyThreadState_SetAsyncExc
+                    self._ulong = ctypes.c_ulong
+                    self._error = ctypes.py_object(TimeoutError)
+                    self._ident = _thread.get_ident
+                    self._now = time.monotonic
+                    self._yield = lambda: time.sleep(0)
+                    self._wake = _thread.allocate_lock()
+                    self._wake.acquire()
+                    self._target = None
+                    self._firing = None
+                    self._fired = None
+                    self._running = True
+                    self._thread = threading.Thread(target=self._loop, name='steve-timeout', daemon=True)
+                    self._thread.start()
+
+                def arm(self, timeout):
+                    self._target = (self._ident(), self._now() + timeout)
+                    self._signal()
+
+                def disarm(self):
+                    target = self._target
+                    self._target = None
+                    while self._firing is not None and self._firing is target:
+                        self._yield()
+                    if self._fired is target:
+                        # raised too late to reach the call, it must not reach the next one
+                        self._raise(self._ulong(target[0]), None)
+
+                def stop(self):
+                    self._running = False
+                    self._signal()
+                    self._thread.join()
+
+                def _signal(self):
+                    try:
+                        self._wake.release()
+                    except RuntimeError:
+                        pass
+
+                def _loop(self):
+                    while self._running:
+                        target = self._target
+                        if target is None:
+                            self._wake.acquire()
+                            continue
+                        left = target[1] - self._now()
+                        if left > 0:
+                            self._wake.acquire(True, left)
+                            continue
+                        # disarm waits while this is set, so it sees every error that was sent and can clear it
+                        self._firing = target
+                        if self._target is target:
+                            self._raise(self._ulong(target[0]), self._error)
+                            self._fired = target
+                        self._firing = None
+
+            def _steve_call(fn, timeout):
+                global _steve_watch
+                if not timeout or timeout <= 0:
+                    return fn()
+                if _steve_watch is None:
+                    try:
+                        _steve_watch = _SteveWatchdog()
+                    except Exception:
+                        # no ctypes or threads here: the Java side still fails the call on time, the script just keeps running
+                        _steve_watch = False
+                if not _steve_watch:
+                    return fn()
+                _steve_watch.arm(timeout)
+                try:
+                    return fn()
+                finally:
+                    _steve_watch.disarm()
+
+            def _steve_stop():
+                if _steve_watch:
+                    _steve_watch.stop()
+
+            def _steve_required(name):
+                return [str(v) for v in (_steve_scripts[str(name)].get('REQUIRED_VARS') or [])]
+            """;
+
+    private static final String[] NO_KEYS = new String[0];
+
+    private enum Kind {
+        // set the context and call main
+        CALL,
+        // set the shared context once, then call main for every item context
+        BATCH,
+        // load the script and return its REQUIRED_VARS instead of calling main
+        METADATA
+    }
+
+    private static final class Task {
+        final Kind kind;
+        final String name;
+        final PythonManager.ScriptInfo info;
+        final Map<String, Object> context;
+        final List<? extends Map<String, Object>> contexts;
+        // System.nanoTime() the call must be done by, 0 for none
+        final long deadline;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        long enqueuedAt;
+        // in the queue, so it has to be taken out if it ends before a worker gets it
+        volatile boolean waiting;
+
+        Task(Kind kind, String name, PythonManager.ScriptInfo info, Map<String, Object> context, List<? extends Map<String, Object>> contexts, long deadline) {
+            this.kind = kind;
+            this.name = name;
+            this.info = info;
+            this.context = context;
+            this.contexts = contexts;
+            this.deadline = deadline;
+        }
+
+        // metadata tasks come from loadScripts and are never refused
+        boolean limited() {
+            return kind != Kind.METADATA;
+        }
+    }
+
+    private static final Task POISON = new Task(Kind.CALL, null, null, null, null, 0);
+
+    private final Supplier<JepConfig> configFactory;
+    private final Supplier<Map<String, PythonManager.ScriptInfo>> scripts;
+    private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+    private final AtomicInteger live = new AtomicInteger(0);
+    private final AtomicInteger idle = new AtomicInteger(0);
+    private final AtomicInteger threadIds = new AtomicInteger(0);
+    private final AtomicLong created = new AtomicLong(0);
+    private final AtomicLong recycled = new AtomicLong(0);
+    private final AtomicLong evicted = new AtomicLong(0);
+
+    // limited tasks in the queue, and callers blocked until one of them leaves
+    private final AtomicInteger queued = new AtomicInteger(0);
+    private final AtomicInteger blocked = new AtomicInteger(0);
+    private final ReentrantLock spaceLock = new ReentrantLock();
+    private final Condition spaceFreed = spaceLock.newCondition();
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong timedOut = new AtomicLong(0);
+    private volatile ScheduledThreadPoolExecutor timer;
+
+    private volatile int size;
+    private volatile int maxCalls = 0;
+    private volatile long idleTimeoutNanos = 0;
+    private volatile int maxQueued = Integer.MAX_VALUE;
+    private volatile RejectionPolicy rejectionPolicy = RejectionPolicy.REJECT;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param configFactory New config for every interpreter
+     * @param scripts       The currently loaded scripts, preloaded into every new interpreter
+     * @param size          Most interpreters alive at once
+     */
+    InterpreterPool(Supplier<JepConfig> configFactory, Supplier<Map<String, PythonManager.ScriptInfo>> scripts, int size) {
+        this.configFactory = configFactory;
+        this.scripts = scripts;
+        this.size = size;
+    }
+
+    void setSize(int size) { this.size = size; }
+    void setMaxCalls(int maxCalls) { this.maxCalls = maxCalls; }
+    void setIdleTimeoutNanos(long nanos) { this.idleTimeoutNanos = nanos; }
+    void setRejectionPolicy(RejectionPolicy policy) { this.rejectionPolicy = policy; }
+
+    void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+        signalSpace();
+    }
+
+    int getInterpreterCount() { return live.get(); }
+    long getCreatedCount() { return created.get(); }
+    long getRecycledCount() { return recycled.get(); }
+    long getEvictedCount() { return evicted.get(); }
+    long getCompletedCount() { return completed.get(); }
+    long getFailedCount() { return failed.get(); }
+    long getRejectedCount() { return rejected.get(); }
+    long getTimedOutCount() { return timedOut.get(); }
+    LatencyHistogram getQueueWait() { return queueWait; }
+    LatencyHistogram getRunTime() { return runTime; }
+
+    /**
+     * Queues a call of the script's main function
+     *
+     * @param timeoutNanos Time the call has from now, waiting included. 0 for no limit
+     * @return Completes with the value main returned, or the error it raised
+     */
+    CompletableFuture<Object> submit(String name, PythonManager.ScriptInfo info, Map<String, Object> context, long timeoutNanos) {
+        return enqueue(new Task(Kind.CALL, name, info, context, null, deadline(timeoutNanos)));
+    }
+
+    /**
+     * Queues one interpreter call that runs main once per item context
+     *
+     * @param shared       Variables set once for the whole batch (big arrays go here), may be null
+     * @param contexts     Variables of each run, set on top of the shared ones
+     * @param timeoutNanos Time the whole batch has from now, waiting included. 0 for no limit
+     * @return Completes with a List holding what main returned for each context, in order
+     */
+    CompletableFuture<Object> submitBatch(String name, PythonManager.ScriptInfo info, Map<String, Object> shared, List<? extends Map<String, Object>> contexts, long timeoutNanos) {
+        return enqueue(new Task(Kind.BATCH, name, info, shared, contexts, deadline(timeoutNanos)));
+    }
+
+    /**
+     * Queues a (re)load of the script, which also leaves it loaded in that interpreter
+     *
+     * @return Completes with the REQUIRED_VARS of the script as a List of String
+     */
+    CompletableFuture<Object> submitMetadata(String name, PythonManager.ScriptInfo info) {
+        return enqueue(new Task(Kind.METADATA, name, info, null, null, 0));
+    }
+
+    private static long deadline(long timeoutNanos) {
+        if (timeoutNanos <= 0) return 0;
+        long deadline = System.nanoTime() + timeoutNanos;
+        return deadline == 0 ? 1 : deadline;
+    }
+
+    private CompletableFuture<Object> enqueue(Task task) {
+        if (shutdown) {
+            task.future.completeExceptionally(new RejectedExecutionException("Python interpreter pool is shut down"));
+            return task.future;
+        }
+        if (task.limited()) {
+            watch(task);
+            if (!reserve(task)) {
+                return task.future;
+            }
+        }
+        task.enqueuedAt = System.nanoTime();
+        task.waiting = true;
+        tasks.offer(task);
+        if (idle.get() == 0) {
+            startWorker();
+        }
+        // the pool may have shut down between the check above and the offer, and then nobody would take it
+        if (shutdown && tasks.remove(task)) {
+            release(task);
+            task.future.completeExceptionally(new RejectedExecutionException("Python interpreter pool is shut down"));
+        }
+        return task.future;
+    }
+
+    /**
+     * Takes a queue slot for the task, applying the rejection policy when the queue is full
+     *
+     * @return false if the task was already completed instead of queued
+     */
+    private boolean reserve(Task task) {
+        if (tryReserve()) return true;
+
+        switch (rejectionPolicy) {
+            case DROP_OLDEST -> {
+                while (!tryReserve()) {
+                    if (!dropOldest()) Thread.onSpinWait();
+                }
+                return true;
+            }
+            case BLOCK -> {
+                if (!awaitSpace(task)) return false;
+                if (task.future.isDone()) {
+                    // cancelled right as the slot was found
+                    release(task);
+                    return false;
+                }
+                return true;
+            }
+            case CALLER_RUNS -> {
+                runOnCaller(task);
+                return false;
+            }
+            default -> {
+                reject(task, "Python call queue is full (" + maxQueued + " waiting)");
+                return false;
+            }
+        }
+    }
+
+    private boolean tryReserve() {
+        int current;
+        do {
+            current = queued.get();
+            if (current >= maxQueued) return false;
+        } while (!queued.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private boolean dropOldest() {
+        for (Task oldest : tasks) {
+            if (oldest == POISON || !oldest.limited()) continue;
+            if (tasks.remove(oldest)) {
+                release(oldest);
+                reject(oldest, "Dropped from the Python call queue for a newer call");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean awaitSpace(Task task) {
+        blocked.incrementAndGet();
+        spaceLock.lock();
+        try {
+            while (!tryReserve()) {
+                if (shutdown) {
+                    reject(task, "Python interpreter pool is shut down");
+                    return false;
+                }
+                if (task.future.isDone()) {
+                    // timed out or cancelled while waiting
+                    return false;
+                }
+                if (task.deadline == 0) {
+                    spaceFreed.await();
+                } else {
+                    long left = task.deadline - System.nanoTime();
+                    if (left <= 0) {
+                        timeOut(task);
+                        return false;
+                    }
+                    spaceFreed.awaitNanos(left);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+            return false;
+        } finally {
+            spaceLock.unlock();
+            blocked.decrementAndGet();
+        }
+    }
+
+    private void release(Task task) {
+        if (task.limited()) {
+            queued.decrementAndGet();
+            if (blocked.get() > 0) signalSpace();
+        }
+    }
+
+    private void signalSpace() {
+        spaceLock.lock();
+        try {
+            spaceFreed.signalAll();
+        } finally {
+            spaceLock.unlock();
+        }
+    }
+
+    private void reject(Task task, String message) {
+        if (task.future.completeExceptionally(new RejectedExecutionException(message))) {
+            rejected.incrementAndGet();
+        }
+    }
+
+    private void timeOut(Task task) {
+        if (task.future.completeExceptionally(new TimeoutException("Python call to " + task.name + " timed out"))) {
+            timedOut.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fails the task at its deadline, and takes it out of the queue if it ends (timeout or cancel) while still waiting there
+     */
+    private void watch(Task task) {
+        ScheduledFuture<?> timeout = task.deadline == 0 ? null
+                : timer().schedule(() -> timeOut(task), task.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+        task.future.whenComplete((result, error) -> {
+            if (timeout != null) timeout.cancel(false);
+            if (task.waiting && tasks.remove(task)) release(task);
+            // a caller blocked on this task has to see it end
+            if (blocked.get() > 0) signalSpace();
+        });
+    }
+
+    private ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor current = timer;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (timer == null) {
+                ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor(1, r -> {
+                    Thread thread = new Thread(r, "SteveLib-Python-Timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                created.setRemoveOnCancelPolicy(true);
+                timer = created;
+            }
+            return timer;
+        }
+    }
+
+    /**
+     * Starts every interpreter up front, each one loading all the current scripts
+     */
+    void warmUp() {
+        while (!shutdown && startWorker()) {
+            // start until the pool is full
+        }
+    }
+
+    /**
+     * Closes every interpreter once it finishes its current call. Calls still waiting are failed
+     */
+    void shutdown() {
+        shutdown = true;
+        Task task;
+        while ((task = tasks.poll()) != null) {
+            if (task == POISON) continue;
+            release(task);
+            task.future.completeExceptionally(new RejectedExecutionException("Python interpreter pool is shut down"));
+        }
+        signalSpace();
+        for (int i = live.get(); i > 0; i--) {
+            tasks.offer(POISON);
+        }
+        ScheduledThreadPoolExecutor current = timer;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+
+    private boolean startWorker() {
+        int current;
+        do {
+            current = live.get();
+            if (current >= size) return false;
+        } while (!live.compareAndSet(current, current + 1));
+
+        Thread thread = new Thread(this::work, "SteveLib-Python-" + threadIds.getAndIncrement());
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void work() {
+        SubInterpreter jep = null;
+        Map<String, String> loaded = new HashMap<>();
+        int calls = 0;
+
+        // opened as soon as the worker starts (and again right after a recycle), so calls find it warm
+        boolean openFailed = false;
+
+        try {
+            while (!shutdown) {
+                if (jep == null && !openFailed) {
+                    try {
+                        jep = open(loaded, true);
+                        calls = 0;
+                    } catch (Exception | Error e) {
+                        openFailed = true;
+                        LOGGER.log(Level.WARNING, "Could not start a Python interpreter", e);
+                    }
+                }
+
+                Task task;
+                idle.incrementAndGet();
+                try {
+                    long timeout = idleTimeoutNanos;
+                    task = timeout > 0 ? tasks.poll(timeout, TimeUnit.NANOSECONDS) : tasks.take();
+                } finally {
+                    idle.decrementAndGet();
+                }
+
+                if (task == null) {
+                    if (tasks.isEmpty()) {
+                        evicted.incrementAndGet();
+                        break;
+                    }
+                    continue;
+                }
+                if (task == POISON) break;
+
+                task.waiting = false;
+                release(task);
+                // timed out or cancelled while it waited
+                if (task.future.isDone()) continue;
+                if (task.limited()) {
+                    queueWait.record(System.nanoTime() - task.enqueuedAt);
+                }
+
+                if (jep == null) {
+                    try {
+                        jep = open(loaded, true);
+                        calls = 0;
+                        openFailed = false;
+                    } catch (Exception | Error e) {
+                        task.future.completeExceptionally(e);
+                        continue;
+                    }
+                }
+
+                boolean healthy = execute(jep, loaded, task);
+                calls++;
+                int limit = maxCalls;
+                if (!healthy || (limit > 0 && calls >= limit)) {
+                    close(jep);
+                    jep = null;
+                    loaded.clear();
+                    recycled.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(jep);
+            live.decrementAndGet();
+            // a call may have been queued while this worker was leaving
+            if (!shutdown && !tasks.isEmpty() && idle.get() == 0) {
+                startWorker();
+            }
+        }
+    }
+
+    /**
+     * CALLER_RUNS: the calling thread pays for a throwaway interpreter that only loads this script
+     */
+    private void runOnCaller(Task task) {
+        SubInterpreter jep = null;
+        try {
+            jep = open(new HashMap<>(), false);
+            execute(jep, new HashMap<>(), task);
+        } catch (Exception | Error e) {
+            task.future.completeExceptionally(e);
+        } finally {
+            close(jep);
+        }
+    }
+
+    private SubInterpreter open(Map<String, String> loaded, boolean preload) throws JepException {
+        SubInterpreter jep = new SubInterpreter(configFactory.get());
+        try {
+            jep.exec(BOOTSTRAP);
+            if (preload) {
+                for (Map.Entry<String, PythonManager.ScriptInfo> entry : scripts.get().entrySet()) {
+                    try {
+                        load(jep, loaded, entry.getKey(), entry.getValue());
+                    } catch (JepException e) {
+                        // left for the call that needs it, which reports the error
+                        SteveCommandLib2.systemPrint(() -> "Could not preload " + entry.getKey() + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (JepException e) {
+            jep.close();
+            throw e;
+        }
+        created.incrementAndGet();
+        return jep;
+    }
+
+    /**
+     * @return false if the interpreter should be replaced
+     */
+    private boolean execute(SubInterpreter jep, Map<String, String> loaded, Task task) {
+        if (task.kind == Kind.METADATA) {
+            try {
+                load(jep, loaded, task.name, task.info);
+                task.future.complete(jep.invoke("_steve_required", task.name));
+                return true;
+            } catch (JepException e) {
+                task.future.completeExceptionally(e);
+                return isHealthy(jep);
+            } catch (RuntimeException e) {
+                task.future.completeExceptionally(e);
+                return false;
+            }
+        }
+
+        long start = System.nanoTime();
+        double timeout = 0;
+        if (task.deadline != 0) {
+            long left = task.deadline - start;
+            if (left <= 0) {
+                timeOut(task);
+                return true;
+            }
+            timeout = left / 1e9;
+        }
+
+        try {
+            String version = loaded.get(task.name);
+            if (!task.info.getVersion().equals(version)) {
+                load(jep, loaded, task.name, task.info);
+            }
+            String[] keys = NO_KEYS;
+            if (task.context != null && !task.context.isEmpty()) {
+                keys = new String[task.context.size()];
+                int i = 0;
+                for (Map.Entry<String, Object> entry : task.context.entrySet()) {
+                    jep.set(entry.getKey(), entry.getValue());
+                    keys[i++] = entry.getKey();
+                }
+            }
+            Object result = task.kind == Kind.BATCH
+                    ? jep.invoke("_steve_batch", task.name, keys, task.contexts, timeout)
+                    : jep.invoke("_steve_run", task.name, keys, timeout);
+            completed.incrementAndGet();
+            task.future.complete(result);
+            return true;
+        } catch (JepException e) {
+            fail(task, e);
+            return isHealthy(jep);
+        } catch (RuntimeException e) {
+            fail(task, e);
+            return false;
+        } finally {
+            runTime.record(System.nanoTime() - start);
+        }
+    }
+
+    private void fail(Task task, Exception e) {
+        // the TimeoutError raised inside the script, or any error after the deadline, counts as the timeout
+        if (task.deadline != 0 && System.nanoTime() - task.deadline >= 0) {
+            timeOut(task);
+        } else {
+            failed.incrementAndGet();
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    private static void load(SubInterpreter jep, Map<String, String> loaded, String name, PythonManager.ScriptInfo info) throws JepException {
+        jep.invoke("_steve_load", name, info.getFile().getAbsolutePath());
+        loaded.put(name, info.getVersion());
+    }
+
+    // a Python error in the script leaves the interpreter usable, anything that breaks this probe doesn't
+    private static boolean isHealthy(SubInterpreter jep) {
+        try {
+            jep.getValue("len(_steve_scripts)");
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void close(SubInterpreter jep) {
+        if (jep == null) return;
+        try {
+            // an interpreter can only be closed once its own Python threads are gone
+            jep.invoke("_steve_stop");
+        } catch (Exception e) {
+            // nothing was started, or the interpreter is already broken
+        }
+        try {
+            jep.close();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error closing Python interpreter", e);
+        }
+    }
+
+    /**
+     * @return How many calls are waiting for an interpreter
+     */
+    int getQueuedCount() {
+        return queued.get();
+    }
+}
@@ -3,22 +3,43 @@ package com.daviipkp.stevecommandlib2;
 import com.daviipkp.stevecommandlib2.annotations.CommandDescribe;
 import com.daviipkp.stevecommandlib2.annotations.FieldDescribe;
 import com.daviipkp.stevecommandlib2.instance.Command;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.lang.reflect.Field;
+import java.net.URL;
+import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,9 +50,19 @@ public class Jsoning {
 
     // guarda o nome do comando linkado com a classe pra ficar facil instanciar dps
     private static final Map<String, Class<? extends Command>> commandRegistry = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, String> commandNames = new ConcurrentHashMap<>();
 
     private static final Map<Class<?>, String> guideCache = new ConcurrentHashMap<>();
 
+    // indexes generated by CommandIndexProcessor, loaded on first use
+    private static volatile List<CommandIndex> commandIndexes;
+
+    // readers are immutable and thread safe, so one per command class is enough
+    private static final Map<Class<?>, ObjectReader> readerCache = new ConcurrentHashMap<>();
+    private static final ObjectWriter COMPACT_WRITER;
+    // same configuration as MAPPER, reading and writing CBOR for CommandCodec
+    private static final ObjectMapper BINARY_MAPPER;
+
     static {
         MAPPER = new ObjectMapper();
 
@@ -40,25 +71,55 @@ public class Jsoning {
         MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
         MAPPER.setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);
         MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        COMPACT_WRITER = MAPPER.writer().without(SerializationFeature.INDENT_OUTPUT);
+        BINARY_MAPPER = MAPPER.copyWith(new CBORFactory()).disable(SerializationFeature.INDENT_OUTPUT);
     }
 
     /**
-     * Scans the specified package for classes annotated with @CommandDescribe
-     * that extend the Command class, and registers them.
+     * Registers every class annotated with @CommandDescribe that extends the Command class in the specified package.
+     * Uses the indexes generated at compile time by CommandIndexProcessor, and only scans the classpath where no index
+     * fully covers a package: packages built without the processor or compiled incrementally, and jars that add commands
+     * to a package indexed in another jar.
      *
      * @param packageName The package to scan ("com.myapp.commands")
      */
     public static void registerCommandPackage(String packageName) {
-        Reflections reflections = new Reflections(packageName);
+        Map<String, Set<String>> coveredByRoot = registerFromIndex(packageName);
+
+        List<URL> uncovered = new ArrayList<>();
+        for (URL url : ClasspathHelper.forPackage(packageName)) {
+            Set<String> covered = coveredByRoot.get(root(url));
+            if (covered == null) {
+                uncovered.add(url);
+            } else {
+                scanCommandPackage(packageName, List.of(url), covered);
+            }
+        }
+        if (!uncovered.isEmpty()) {
+            scanCommandPackage(packageName, uncovered, Set.of());
+        }
+    }
+
+    private static void scanCommandPackage(String packageName, List<URL> urls, Set<String> skippedPackages) {
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        Reflections reflections = new Reflections(new ConfigurationBuilder()
+                .setUrls(urls)
+                .filterInputsBy(path -> {
+                    String name = path.replace('/', '.');
+                    if (!name.startsWith(prefix) || !name.endsWith(".class")) return false;
+                    name = name.substring(0, name.length() - ".class".length());
+                    int dot = name.lastIndexOf('.');
+                    return !skippedPackages.contains(dot < 0 ? "" : name.substring(0, dot));
+                }));
         Set<Class<?>> annotatedClasses = reflections.getTypesAnnotatedWith(CommandDescribe.class);
 
         for (Class<?> clazz : annotatedClasses) {
             if (Command.class.isAssignableFrom(clazz)) {
                 Class<? extends Command> cmdClass = clazz.asSubclass(Command.class);
-                loadedCommands.add(cmdClass);
                 CommandDescribe desc = clazz.getAnnotation(CommandDescribe.class);
                 String cmdName = desc.name() != null && !desc.name().isEmpty() ? desc.name() : clazz.getSimpleName();
-                commandRegistry.put(cmdName.toLowerCase(), cmdClass);
+                register(cmdName.toLowerCase(), cmdClass);
 
             } else {
                 SteveCommandLib2.systemPrint(">>> Ignoring command '" + clazz.getName() + "' because it does not extend Command class.");
@@ -66,6 +127,76 @@ public class Jsoning {
         }
     }
 
+    /**
+     * Registers the indexed commands in the package (or one of its subpackages)
+     *
+     * @return Classpath root to the packages an index in that root covers, which don't need scanning there
+     */
+    private static Map<String, Set<String>> registerFromIndex(String packageName) {
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        Map<String, Set<String>> coveredByRoot = new HashMap<>();
+
+        for (CommandIndex index : commandIndexes()) {
+            CodeSource source = index.getClass().getProtectionDomain().getCodeSource();
+            if (source != null && source.getLocation() != null && !index.coveredPackages().isEmpty()) {
+                coveredByRoot.computeIfAbsent(root(source.getLocation()), k -> new HashSet<>()).addAll(index.coveredPackages());
+            }
+            for (Map.Entry<String, String> entry : index.commands().entrySet()) {
+                String className = entry.getValue();
+                if (!className.startsWith(prefix)) continue;
+
+                Class<?> clazz;
+                try {
+                    clazz = Class.forName(className, false, index.getClass().getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    SteveCommandLib2.systemPrint(">>> Command index lists '" + className + "' but it is not on the classpath.");
+                    continue;
+                }
+                register(entry.getKey(), clazz.asSubclass(Command.class));
+                String guide = index.guides().get(className);
+                if (guide != null) {
+                    guideCache.putIfAbsent(clazz, guide);
+                }
+            }
+        }
+        return coveredByRoot;
+    }
+
+    // "jar:file:/x.jar!/" and "file:/x.jar" are the same root
+    private static String root(URL url) {
+        String s = url.toExternalForm();
+        if (s.startsWith("jar:")) s = s.substring("jar:".length());
+        if (s.endsWith("!/")) s = s.substring(0, s.length() - "!/".length());
+        return s;
+    }
+
+    private static synchronized void register(String name, Class<? extends Command> cmdClass) {
+        if (!loadedCommands.contains(cmdClass)) {
+            loadedCommands.add(cmdClass);
+        }
+        commandRegistry.put(name, cmdClass);
+        commandNames.put(cmdClass, name);
+    }
+
+    private static List<CommandIndex> commandIndexes() {
+        List<CommandIndex> indexes = commandIndexes;
+        if (indexes == null) {
+            List<CommandIndex> loaded = new ArrayList<>();
+            Iterator<CommandIndex> it = ServiceLoader.load(CommandIndex.class).iterator();
+            while (true) {
+                try {
+                    if (!it.hasNext()) break;
+                    loaded.add(it.next());
+                } catch (ServiceConfigurationError e) {
+                    // a service file merged across builds can still list an index whose package was since removed
+                    SteveCommandLib2.systemPrint(">>> Skipping command index: " + e.getMessage());
+                }
+            }
+            commandIndexes = indexes = List.copyOf(loaded);
+        }
+        return indexes;
+    }
+
     /**
      * @return An unmodifiable list of currently registered command classes
      */
@@ -88,6 +219,52 @@ public class Jsoning {
         }
     }
 
+    /**
+     * Converts a Java object into a compact (not indented) JSON String, for machine-to-machine output
+     *
+     * @param object The object to serialize
+     * @return The JSON string representation
+     * @throws RuntimeException if serialization fails
+     */
+    public static String stringifyCompact(Object object) {
+        try {
+            return COMPACT_WRITER.writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error executing stringify.", e);
+        }
+    }
+
+    /**
+     * Converts a Java object into compact UTF-8 JSON bytes, without building an intermediate String
+     *
+     * @param object The object to serialize
+     * @return The UTF-8 encoded JSON
+     * @throws RuntimeException if serialization fails
+     */
+    public static byte[] toJsonBytes(Object object) {
+        try {
+            return COMPACT_WRITER.writeValueAsBytes(object);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error executing stringify.", e);
+        }
+    }
+
+    /**
+     * Writes a Java object as compact UTF-8 JSON straight into a stream. The stream is not closed
+     *
+     * @param object The object to serialize
+     * @param out    Where to write the JSON
+     * @throws RuntimeException if serialization or the write fails
+     */
+    public static void writeJson(Object object, OutputStream out) {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            COMPACT_WRITER.writeValue(generator, object);
+        } catch (IOException e) {
+            throw new RuntimeException("Error executing stringify.", e);
+        }
+    }
+
     /**
      * Parses a JSON string into a specific Java class
      *
@@ -117,27 +294,149 @@ public class Jsoning {
             throw new RuntimeException("Error parsing JSON with TypeReference.", e);
         }
     }
-    public static Command createCommandFromJson(String json) {
-        try {
-            JsonNode root = MAPPER.readTree(json);
-            if (!root.has("type")) {
-                throw new IllegalArgumentException("JSON needs a 'type' field to identify the command");
-            }
 
-            String type = root.get("type").asText().toLowerCase();
-            Class<? extends Command> targetClass = commandRegistry.get(type);
+    /**
+     * Parses a JSON string into an existing object. Only the properties present in the JSON are replaced
+     *
+     * @param json   The JSON string
+     * @param target The object to update
+     * @return The updated target
+     */
+    public static <T> T parseInto(String json, T target) {
+        try {
+            return MAPPER.readerForUpdating(target).readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error parsing JSON into " + target.getClass().getSimpleName(), e);
+        }
+    }
 
-            if (targetClass == null) {
-                throw new IllegalArgumentException("Command type '" + type + "' not registered.");
-            }
+    /**
+     * Creates a registered command from its JSON representation in a single streaming pass.
+     * Fields before the 'type' discriminator are buffered, everything after it is bound straight into the command class
+     *
+     * @param json The JSON object, with a 'type' field naming a registered command
+     * @return The new command instance
+     * @throws IllegalArgumentException if there is no 'type' field or the type isn't registered
+     */
+    public static Command createCommandFromJson(String json) {
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            return readCommand(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Error auto-parsing command from JSON", e);
+        }
+    }
 
-            return MAPPER.treeToValue(root, targetClass);
+    /**
+     * Same as createCommandFromJson(String), reading UTF-8 bytes directly
+     */
+    public static Command createCommandFromJson(byte[] json) {
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            return readCommand(parser);
+        } catch (IOException e) {
+            throw new RuntimeException("Error auto-parsing command from JSON", e);
+        }
+    }
 
-        } catch (JsonProcessingException e) {
+    /**
+     * Same as createCommandFromJson(String), reading one JSON object from a stream. The stream is not closed
+     */
+    public static Command createCommandFromJson(InputStream json) {
+        try (JsonParser parser = MAPPER.getFactory().createParser(json)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return readCommand(parser);
+        } catch (IOException e) {
             throw new RuntimeException("Error auto-parsing command from JSON", e);
         }
     }
 
+    /**
+     * Reads one command object from a parser that is before or at its START_OBJECT.
+     * The parser is left on the END_OBJECT of that command
+     */
+    static Command readCommand(JsonParser parser) throws IOException {
+        JsonToken token = parser.hasCurrentToken() ? parser.currentToken() : parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("JSON needs a 'type' field to identify the command");
+        }
+
+        // usually 'type' comes first and this only holds START_OBJECT
+        TokenBuffer prefix = new TokenBuffer(parser);
+        prefix.writeStartObject();
+        String type = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("type".equals(field)) {
+                type = parser.getValueAsString();
+                break;
+            }
+            prefix.writeFieldName(field);
+            prefix.copyCurrentStructure(parser);
+        }
+
+        if (type == null) {
+            throw new IllegalArgumentException("JSON needs a 'type' field to identify the command");
+        }
+        Class<? extends Command> targetClass = commandRegistry.get(type.toLowerCase());
+        if (targetClass == null) {
+            throw new IllegalArgumentException("Command type '" + type.toLowerCase() + "' not registered.");
+        }
+        prefix.writeFieldName("type");
+        prefix.writeString(type);
+
+        // replay the buffered fields, then keep reading the rest of the object from the source
+        JsonParser replay = JsonParserSequence.createFlattened(false, prefix.asParser(parser.getCodec()), parser);
+        replay.nextToken();
+        return readerFor(targetClass).readValue(replay);
+    }
+
+    /**
+     * Parser for incremental reading of a stream that holds several JSON values. The stream is not closed
+     */
+    static JsonParser createParser(InputStream in) throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        return parser;
+    }
+
+    /**
+     * Parser for incremental reading of a reader that holds several JSON values. The reader is not closed
+     */
+    static JsonParser createParser(Reader in) throws IOException {
+        JsonParser parser = MAPPER.getFactory().createParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        return parser;
+    }
+
+    static ObjectMapper binaryMapper() {
+        return BINARY_MAPPER;
+    }
+
+    /**
+     * @return Read-only view of the registered command names (lowercase) and their classes
+     */
+    static Map<String, Class<? extends Command>> registeredCommands() {
+        return Collections.unmodifiableMap(commandRegistry);
+    }
+
+    /**
+     * @return The registered (lowercase) name of a command class, or null if it isn't registered
+     */
+    static String commandName(Class<?> clazz) {
+        return commandNames.get(clazz);
+    }
+
+    /**
+     * @return The class registered under a command type name (any case), or null
+     */
+    static Class<? extends Command> commandClass(String type) {
+        return commandRegistry.get(type.toLowerCase());
+    }
+
+    static ObjectReader readerFor(Class<? extends Command> clazz) {
+        return readerCache.computeIfAbsent(clazz, MAPPER::readerFor);
+    }
+
     /**
      * Extracts a specific value from a JSON string using a pointer path
      *
@@ -0,0 +1,72 @@
+package com.daviipkp.stevecommandlib2;
+
+import java.util.Map;
+
+/**
+ * Point-in-time copy of the engine metrics. All durations are in nanoseconds
+ *
+ * @param commandsExecuted      Commands that finished normally
+ * @param commandsFailed        Commands that threw
+ * @param failureRate           commandsFailed / (commandsExecuted + commandsFailed)
+ * @param commandsRejected      Commands and triggers refused because their queue was full
+ * @param commandsDropped       Waiting commands and triggers dropped to make room for newer ones
+ * @param commandsCallerRan     Commands and triggers run on the adding thread because their queue was full
+ * @param queueDepth            Commands waiting in the global queue and in every lane
+ * @param activeLanes           Lanes holding commands
+ * @param triggerCount          Registered triggers
+ * @param parallelRunning       ParallelCommands currently alive
+ * @param poolActiveThreads     Worker threads busy right now (-1 on virtual threads)
+ * @param poolSaturation        poolActiveThreads / pool size, between 0 and 1 (-1 on virtual threads)
+ * @param poolQueuedTasks       Tasks waiting for a worker thread (-1 on virtual threads)
+ * @param ticks                 Ticks run since start
+ * @param tickOverruns          Ticks that ran past the start of the next one
+ * @param tick                  Tick duration distribution
+ * @param deadlinesMet          Queued commands with a deadline that finished on time
+ * @param deadlinesMissed       Queued commands with a deadline that finished (or failed) after it
+ * @param deadlineLateness      How late the missed ones were
+ * @param commands              Execution latency per command class (by class name)
+ */
+public record MetricsSnapshot(
+        long commandsExecuted,
+        long commandsFailed,
+        double failureRate,
+        long commandsRejected,
+        long commandsDropped,
+        long commandsCallerRan,
+        int queueDepth,
+        int activeLanes,
+        int triggerCount,
+        int parallelRunning,
+        int poolActiveThreads,
+        double poolSaturation,
+        int poolQueuedTasks,
+        long ticks,
+        long tickOverruns,
+        Latency tick,
+        long deadlinesMet,
+        long deadlinesMissed,
+        Latency deadlineLateness,
+        Map<String, CommandStats> commands) {
+
+    /**
+     * Summary of a latency histogram. Percentiles are accurate to 12.5%
+     */
+    public record Latency(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+
+        static Latency of(LatencyHistogram histogram) {
+            return new Latency(
+                    histogram.getCount(),
+                    histogram.getMean(),
+                    histogram.getPercentile(50),
+                    histogram.getPercentile(90),
+                    histogram.getPercentile(99),
+                    histogram.getMax());
+        }
+    }
+
+    /**
+     * @param latency  Time spent in execute (or in the trigger check) per call
+     * @param failures Calls that threw
+     */
+    public record CommandStats(Latency latency, long failures) {}
+}
@@ -0,0 +1,23 @@
+package com.daviipkp.stevecommandlib2;
+
+/**
+ * What the tick clock does when a tick takes longer than its period
+ */
+public enum OverrunPolicy {
+
+    /**
+     * Keeps the fixed-rate schedule and runs the missed ticks back to back until the clock is on time again.
+     * The backlog is dropped if it gets over one second
+     */
+    CATCH_UP,
+
+    /**
+     * Drops the missed ticks and waits for the next slot of the original schedule
+     */
+    SKIP,
+
+    /**
+     * Starts the next tick right away and shifts the whole schedule by the overrun
+     */
+    STRETCH
+}
@@ -0,0 +1,71 @@
+package com.daviipkp.stevecommandlib2;
+
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts virtual thread pinning through the JFR jdk.VirtualThreadPinned event.
+ * A virtual thread gets pinned to its carrier when it blocks while holding a monitor
+ * (inside a synchronized block or method), so the carrier can't run other virtual threads meanwhile.
+ */
+final class PinningMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(PinningMonitor.class.getName());
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+
+    private final AtomicLong pinnedCount = new AtomicLong(0);
+    private final AtomicLong pinnedNanos = new AtomicLong(0);
+    private volatile String lastPinnedFrame = null;
+    private RecordingStream stream;
+
+    /**
+     * @param threshold Pins shorter than this are ignored
+     */
+    void start(Duration threshold) {
+        try {
+            RecordingStream rs = new RecordingStream();
+            rs.enable(EVENT).withThreshold(threshold).withStackTrace();
+            rs.onEvent(EVENT, event -> {
+                pinnedCount.incrementAndGet();
+                pinnedNanos.addAndGet(event.getDuration().toNanos());
+                lastPinnedFrame = topFrame(event.getStackTrace());
+            });
+            rs.startAsync();
+            stream = rs;
+        } catch (Exception | LinkageError e) {
+            LOGGER.log(Level.WARNING, "Could not start virtual thread pinning monitor, pinning metrics will stay at 0", e);
+        }
+    }
+
+    void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    long getPinnedCount() { return pinnedCount.get(); }
+    long getPinnedNanos() { return pinnedNanos.get(); }
+    String getLastPinnedFrame() { return lastPinnedFrame; }
+
+    // first frame outside the JDK, which is usually the synchronized code that caused the pin
+    private static String topFrame(RecordedStackTrace trace) {
+        if (trace == null) return null;
+
+        List<RecordedFrame> frames = trace.getFrames();
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return frames.isEmpty() ? null : frames.getFirst().getMethod().getType().getName();
+    }
+}
@@ -1,32 +1,114 @@
 package com.daviipkp.stevecommandlib2;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import jep.DirectNDArray;
 import jep.JepConfig;
-import jep.JepException;
-import jep.SubInterpreter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads the .py scripts of a folder and runs them on a pool of Jep interpreters.
+ * A script runs in two parts: its module-level code runs once per interpreter, when the script is loaded
+ * and before any context exists, then each call sets the context variables as globals of the script and calls main().
+ * Context variables are only visible inside main (and what it calls); module-level code must not read them
+ */
 public class PythonManager {
 
     public static class ScriptInfo {
         private final File file;
         private final List<String> requiredVars;
+        private final long lastModified;
+        private final String version;
 
         public ScriptInfo(File file, List<String> requiredVars) {
+            this(file, requiredVars, null);
+        }
+
+        ScriptInfo(File file, List<String> requiredVars, String hash) {
             this.file = file;
             this.requiredVars = requiredVars != null ? requiredVars : new ArrayList<>();
+            this.lastModified = file.lastModified();
+            this.version = hash != null ? hash : Long.toString(lastModified);
         }
 
         public File getFile() { return file; }
         public List<String> getRequiredVars() { return requiredVars; }
+
+        /**
+         * @return Modification time of the file when it was loaded
+         */
+        public long getLastModified() { return lastModified; }
+
+        /**
+         * @return Content hash of the file when it was loaded (its modification time if none was given).
+         *         Interpreters reload the script when it changes
+         */
+        public String getVersion() { return version; }
     }
 
     private static File scriptFolder;
     private static final Map<String, ScriptInfo> loadedScripts = new ConcurrentHashMap<>();
 
+    /**
+     * What the on-disk index remembers about a script. A script whose size and mtime match is trusted without hashing it
+     */
+    private record IndexEntry(String hash, long lastModified, long size, List<String> requiredVars) {}
+
+    private static final String INDEX_FILE_NAME = ".script-index.json";
+    private static final long WATCH_DEBOUNCE_MS = 100;
+    private static final Object LOAD_LOCK = new Object();
+    private static final Object WATCH_LOCK = new Object();
+    private static File indexFile;
+    private static boolean indexFileSet = false;
+    private static volatile WatchService watchService;
+
+    private static final Object POOL_LOCK = new Object();
+    private static volatile InterpreterPool interpreterPool;
+    private static int poolSize = Runtime.getRuntime().availableProcessors();
+    private static int maxCallsPerInterpreter = 0;
+    private static Duration interpreterIdleTimeout = Duration.ZERO;
+    private static int maxQueuedCalls = 10_000;
+    private static RejectionPolicy rejectionPolicy = RejectionPolicy.REJECT;
+
+    /**
+     * State of the Python executor. Counters start again when the interpreters are shut down
+     *
+     * @param interpreters Interpreters alive
+     * @param queuedCalls  Calls waiting for an interpreter
+     * @param completed    Calls where main returned
+     * @param failed       Calls where the script raised an error
+     * @param rejected     Calls refused or dropped because the queue was full
+     * @param timedOut     Calls that ran out of time, waiting or running
+     * @param queueWait    Time calls spent in the queue
+     * @param runTime      Time calls spent in an interpreter
+     */
+    public record ExecutorStats(int interpreters, int queuedCalls, long completed, long failed, long rejected, long timedOut,
+                                MetricsSnapshot.Latency queueWait, MetricsSnapshot.Latency runTime) {}
+
     /**
      * @param folder Folder to search for Python Scripts
      */
@@ -39,37 +121,232 @@ public class PythonManager {
     }
 
     /**
-     * Loads all .py files as executable scripts in ScriptFolder
+     * @param file Where the REQUIRED_VARS index is kept (default: .script-index.json inside the script folder).
+     *             null turns the index off, so every load runs every script
+     */
+    public static void setScriptIndexFile(File file) {
+        indexFile = file;
+        indexFileSet = true;
+    }
+
+    /**
+     * Loads all .py files as executable scripts in ScriptFolder.
+     * Scripts are loaded in parallel on the interpreter pool, and a script whose hash matches the on-disk index
+     * is not run at all. Scripts that were deleted since the last load are dropped
      */
     public static void loadScripts() {
         if (scriptFolder == null) {
             return;
         }
-        loadedScripts.clear();
-        File[] files = scriptFolder.listFiles((dir, name) -> name.toLowerCase().endsWith(".py"));
+        File[] files = scriptFolder.listFiles((dir, name) -> isScript(name));
 
         if (files == null) return;
+        refresh(Arrays.asList(files), true);
+    }
 
-        JepConfig config = new JepConfig();
-        config.addIncludePaths(scriptFolder.getAbsolutePath());
+    /**
+     * Reloads scripts whenever a .py file in the script folder is created, changed or deleted.
+     * Only the changed files are processed again. Calls running meanwhile keep the version they started with
+     *
+     * @throws IllegalStateException if no script folder was set
+     */
+    public static void watchScripts() {
+        synchronized (WATCH_LOCK) {
+            if (watchService != null) return;
+            if (scriptFolder == null) {
+                throw new IllegalStateException("Set the script folder before watching it");
+            }
+            try {
+                WatchService service = FileSystems.getDefault().newWatchService();
+                Path folder = scriptFolder.toPath();
+                folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                Thread watcher = new Thread(() -> watchLoop(service, folder), "SteveLib-ScriptWatcher");
+                watcher.setDaemon(true);
+                watcher.start();
+                watchService = service;
+            } catch (IOException e) {
+                throw new RuntimeException("Could not watch script folder " + scriptFolder, e);
+            }
+        }
+    }
 
-        for (File file : files) {
-            try (SubInterpreter jep = new SubInterpreter(config)) {
-                jep.runScript(file.getAbsolutePath());
+    public static void stopWatchingScripts() {
+        synchronized (WATCH_LOCK) {
+            if (watchService == null) return;
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                SteveCommandLib2.systemPrint(() -> "Error closing script watcher: " + e.getMessage());
+            }
+            watchService = null;
+        }
+    }
 
-                Object reqObj = jep.getValue("REQUIRED_VARS");
-                List<String> requirements = new ArrayList<>();
+    public static boolean isWatchingScripts() {
+        return watchService != null;
+    }
+
+    private static void watchLoop(WatchService service, Path folder) {
+        try {
+            while (true) {
+                Set<String> changed = new LinkedHashSet<>();
+                collect(service.take(), changed);
+                // editors save in several steps, so the events that follow right after are merged in
+                WatchKey more;
+                while ((more = service.poll(WATCH_DEBOUNCE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(more, changed);
+                }
+                if (changed.isEmpty()) continue;
+
+                List<File> files = new ArrayList<>(changed.size());
+                for (String name : changed) {
+                    files.add(folder.resolve(name).toFile());
+                }
+                SteveCommandLib2.systemPrint(() -> "Reloading changed scripts: " + changed);
+                refresh(files, false);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private static void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path path && isScript(path.getFileName().toString())) {
+                changed.add(path.getFileName().toString());
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Brings loadedScripts up to date for the given files
+     *
+     * @param fullScan true if files is the whole folder, so anything not in it was deleted
+     */
+    private static void refresh(List<File> files, boolean fullScan) {
+        synchronized (LOAD_LOCK) {
+            Map<String, IndexEntry> index = readIndex();
+            Map<String, IndexEntry> updated = new ConcurrentHashMap<>(index);
+            Set<String> names = new HashSet<>();
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+
+            for (File file : files) {
+                String name = file.getName();
+                if (!file.isFile()) {
+                    loadedScripts.remove(name);
+                    updated.remove(name);
+                    continue;
+                }
+                names.add(name);
+                pending.add(loadScript(file, index.get(name), updated));
+            }
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+
+            if (fullScan) {
+                loadedScripts.keySet().retainAll(names);
+                updated.keySet().retainAll(names);
+            }
+            if (!updated.equals(index)) {
+                writeIndex(updated);
+            }
+        }
+    }
+
+    /**
+     * Takes REQUIRED_VARS from the index when the file is unchanged, otherwise runs the script on the pool to read it
+     */
+    private static CompletableFuture<Void> loadScript(File file, IndexEntry cached, Map<String, IndexEntry> updated) {
+        String name = file.getName();
+        try {
+            long lastModified = file.lastModified();
+            long size = file.length();
+            String hash = cached != null && cached.lastModified() == lastModified && cached.size() == size ? cached.hash() : hash(file);
+
+            if (cached != null && cached.hash().equals(hash)) {
+                register(file, cached.requiredVars(), hash);
+                updated.put(name, new IndexEntry(hash, lastModified, size, cached.requiredVars()));
+                return CompletableFuture.completedFuture(null);
+            }
 
-                if (reqObj instanceof List) {
-                    for (Object o : (List<?>) reqObj) {
+            return pool().submitMetadata(name, new ScriptInfo(file, null, hash)).handle((value, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    System.err.println("Failed to load metadata for " + name + ": " + cause.getMessage());
+                    return null;
+                }
+                List<String> requirements = new ArrayList<>();
+                if (value instanceof List) {
+                    for (Object o : (List<?>) value) {
                         requirements.add(o.toString());
                     }
                 }
-                loadedScripts.put(file.getName(), new ScriptInfo(file, requirements));
-                SteveCommandLib2.systemPrint("Loaded " + file.getName() + " needing: " + requirements);
+                register(file, requirements, hash);
+                updated.put(name, new IndexEntry(hash, lastModified, size, requirements));
+                return null;
+            });
+        } catch (IOException e) {
+            System.err.println("Failed to load metadata for " + name + ": " + e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private static void register(File file, List<String> requirements, String hash) {
+        loadedScripts.put(file.getName(), new ScriptInfo(file, new ArrayList<>(requirements), hash));
+        SteveCommandLib2.systemPrint(() -> "Loaded " + file.getName() + " needing: " + requirements);
+    }
 
-            } catch (Exception e) {
-                System.err.println("Failed to load metadata for " + file.getName() + ": " + e.getMessage());
+    private static boolean isScript(String name) {
+        return name.toLowerCase().endsWith(".py");
+    }
+
+    private static String hash(File file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(file.toPath())));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static File currentIndexFile() {
+        if (indexFileSet) return indexFile;
+        return scriptFolder == null ? null : new File(scriptFolder, INDEX_FILE_NAME);
+    }
+
+    private static Map<String, IndexEntry> readIndex() {
+        File file = currentIndexFile();
+        if (file == null || !file.isFile()) return Collections.emptyMap();
+
+        try {
+            return Jsoning.parse(Files.readString(file.toPath()), new TypeReference<Map<String, IndexEntry>>() {});
+        } catch (IOException | RuntimeException e) {
+            // a broken index only costs a full load
+            SteveCommandLib2.systemPrint(() -> "Ignoring unreadable script index " + file + ": " + e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    private static void writeIndex(Map<String, IndexEntry> index) {
+        File file = currentIndexFile();
+        if (file == null) return;
+
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = null;
+        try {
+            // written aside and moved over, so a crash never leaves half an index
+            temp = Files.createTempFile(target.getParent(), ".script-index", ".tmp");
+            Files.writeString(temp, Jsoning.stringify(new TreeMap<>(index)));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            SteveCommandLib2.systemPrint(() -> "Could not write script index " + file + ": " + e.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    // nothing left to do
+                }
             }
         }
     }
@@ -88,43 +365,326 @@ public class PythonManager {
 
 
     /**
+     * Runs the main function of a script on one of the pooled interpreters and waits for it.
+     * The script file runs once per interpreter, at load and without any context; later calls only replace
+     * the context variables and call main, so the context is only visible inside main
+     *
      * @param scriptName Name of the Script to be executed
      * @param context Defining the variables required (REQUIRED_VARS) to execute
      */
     public static void executeScript(String scriptName, Map<String, Object> context) {
+        try {
+            submit(scriptName, context, 0).join();
+        } catch (CompletionException e) {
+            reportFailure(scriptName, e.getCause());
+        }
+    }
+
+    /**
+     * Runs the main function of a script on the Python executor without waiting for it
+     *
+     * @param scriptName Name of the Script to be executed
+     * @param context Defining the variables required (REQUIRED_VARS) to execute
+     * @return Completes with the value main returned. Fails with IllegalArgumentException if the script isn't loaded
+     *         or a required variable is missing, RejectedExecutionException if the call queue refused it, or the error raised by the script
+     */
+    public static CompletableFuture<Object> executeScriptAsync(String scriptName, Map<String, Object> context) {
+        return submit(scriptName, context, 0);
+    }
+
+    /**
+     * Same as executeScriptAsync(String, Map), with a time limit. Once it runs out the future fails with TimeoutException
+     * and a TimeoutError is raised inside the script to stop it (code blocked outside Python, like a Java call, stops when it returns)
+     *
+     * @param timeout Time from now, waiting in the queue included. Duration.ZERO for no limit
+     */
+    public static CompletableFuture<Object> executeScriptAsync(String scriptName, Map<String, Object> context, Duration timeout) {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout must be zero or positive");
+        }
+        return submit(scriptName, context, timeout.toNanos());
+    }
+
+    /**
+     * Runs the main function of a script once per context, all inside a single interpreter call
+     *
+     * @param scriptName Name of the Script to be executed
+     * @param contexts   Variables for each run
+     * @return What main returned for each context, in order (empty if the batch could not run)
+     */
+    public static List<Object> executeBatch(String scriptName, List<? extends Map<String, Object>> contexts) {
+        return executeBatch(scriptName, null, contexts);
+    }
+
+    /**
+     * Runs the main function of a script once per context, all inside a single interpreter call.
+     * The shared variables are converted and set once for the whole batch, so large values
+     * (like the arrays from newDoubleArray) should go there. Item variables are read from the Java maps as each run starts,
+     * and override a shared variable of the same name for that run only
+     *
+     * @param scriptName Name of the Script to be executed
+     * @param shared     Variables visible to every run, may be null
+     * @param contexts   Variables for each run
+     * @return What main returned for each context, in order (empty if the batch could not run).
+     *         If one run raises an error the batch stops there and is reported as failed
+     */
+    public static List<Object> executeBatch(String scriptName, Map<String, Object> shared, List<? extends Map<String, Object>> contexts) {
         ScriptInfo info = loadedScripts.get(scriptName);
 
         if (info == null) {
             System.err.println("Script not found or not loaded: " + scriptName);
-            return;
+            return Collections.emptyList();
+        }
+        if (contexts == null || contexts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (Map<String, Object> context : contexts) {
+            String missing = missingVariable(info, shared, context);
+            if (missing != null) {
+                SteveCommandLib2.systemPrint("Missing variable in python context: " + missing);
+                System.err.println("Aborting execution of " + scriptName + ". Missing required variables in context.");
+                return Collections.emptyList();
+            }
+        }
+
+        try {
+            Object results = pool().submitBatch(scriptName, info, shared, contexts, 0).join();
+            return results instanceof List<?> list ? Collections.unmodifiableList(list) : Collections.emptyList();
+        } catch (CompletionException e) {
+            reportFailure(scriptName, e.getCause());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @param dimensions Shape of the array
+     * @return A float64 array backed by a direct buffer in native byte order. Passed in a context it reaches NumPy
+     *         without copying, and changes made by the script are visible in the buffer
+     */
+    public static DirectNDArray<DoubleBuffer> newDoubleArray(int... dimensions) {
+        return new DirectNDArray<>(allocateDirect(dimensions, Double.BYTES).asDoubleBuffer(), dimensions);
+    }
+
+    /**
+     * Same as newDoubleArray, for float32
+     */
+    public static DirectNDArray<FloatBuffer> newFloatArray(int... dimensions) {
+        return new DirectNDArray<>(allocateDirect(dimensions, Float.BYTES).asFloatBuffer(), dimensions);
+    }
+
+    /**
+     * Same as newDoubleArray, for int32
+     */
+    public static DirectNDArray<IntBuffer> newIntArray(int... dimensions) {
+        return new DirectNDArray<>(allocateDirect(dimensions, Integer.BYTES).asIntBuffer(), dimensions);
+    }
+
+    /**
+     * Same as newDoubleArray, for int64
+     */
+    public static DirectNDArray<LongBuffer> newLongArray(int... dimensions) {
+        return new DirectNDArray<>(allocateDirect(dimensions, Long.BYTES).asLongBuffer(), dimensions);
+    }
+
+    private static ByteBuffer allocateDirect(int[] dimensions, int elementBytes) {
+        if (dimensions == null || dimensions.length == 0) {
+            throw new IllegalArgumentException("Array needs at least one dimension");
+        }
+        long length = 1;
+        for (int d : dimensions) {
+            if (d < 0) {
+                throw new IllegalArgumentException("Array dimensions cannot be negative");
+            }
+            length *= d;
+        }
+        if (length * elementBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array is too large for a single direct buffer");
+        }
+        return ByteBuffer.allocateDirect((int) length * elementBytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @param size Most interpreters alive at once, each one on its own thread (default: number of processors)
+     */
+    public static void setInterpreterPoolSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Interpreter pool size must be >= 1");
+        }
+        synchronized (POOL_LOCK) {
+            poolSize = size;
+            if (interpreterPool != null) interpreterPool.setSize(size);
+        }
+    }
+
+    /**
+     * @param calls Replace an interpreter after this many calls, to release whatever scripts leak. 0 (default) never replaces it
+     */
+    public static void setMaxCallsPerInterpreter(int calls) {
+        if (calls < 0) {
+            throw new IllegalArgumentException("Max calls per interpreter must be >= 0");
+        }
+        synchronized (POOL_LOCK) {
+            maxCallsPerInterpreter = calls;
+            if (interpreterPool != null) interpreterPool.setMaxCalls(calls);
+        }
+    }
+
+    /**
+     * @param timeout Close interpreters that have been idle this long. Duration.ZERO (default) keeps them forever
+     */
+    public static void setInterpreterIdleTimeout(Duration timeout) {
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Idle timeout must be zero or positive");
+        }
+        synchronized (POOL_LOCK) {
+            interpreterIdleTimeout = timeout;
+            if (interpreterPool != null) interpreterPool.setIdleTimeoutNanos(timeout.toNanos());
+        }
+    }
+
+    /**
+     * @param max Most calls waiting for an interpreter at once (default: 10000). Script loading doesn't count
+     */
+    public static void setMaxQueuedCalls(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max queued calls must be >= 1");
+        }
+        synchronized (POOL_LOCK) {
+            maxQueuedCalls = max;
+            if (interpreterPool != null) interpreterPool.setMaxQueued(max);
+        }
+    }
+
+    /**
+     * @param policy What happens to a call when the queue is full (default: REJECT).
+     *               CALLER_RUNS starts a throwaway interpreter on the calling thread, which is slow but never waits for the pool
+     */
+    public static void setRejectionPolicy(RejectionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Rejection policy cannot be null");
+        }
+        synchronized (POOL_LOCK) {
+            rejectionPolicy = policy;
+            if (interpreterPool != null) interpreterPool.setRejectionPolicy(policy);
+        }
+    }
+
+    /**
+     * Starts every pooled interpreter now and loads all the loaded scripts into each one,
+     * so the first calls don't pay for it. Call it after loadScripts()
+     */
+    public static void warmUp() {
+        pool().warmUp();
+    }
+
+    /**
+     * Closes the pooled interpreters. Calls that were still waiting fail; the next call starts a new pool
+     */
+    public static void shutdownInterpreters() {
+        synchronized (POOL_LOCK) {
+            if (interpreterPool != null) {
+                interpreterPool.shutdown();
+                interpreterPool = null;
+            }
+        }
+    }
+
+    /**
+     * @return Interpreters currently alive
+     */
+    public static int getInterpreterCount() {
+        InterpreterPool current = interpreterPool;
+        return current == null ? 0 : current.getInterpreterCount();
+    }
+
+    /**
+     * @return Interpreters replaced because of the call limit or a failed health probe
+     */
+    public static long getRecycledInterpreterCount() {
+        InterpreterPool current = interpreterPool;
+        return current == null ? 0 : current.getRecycledCount();
+    }
+
+    /**
+     * @return Interpreters closed after the idle timeout
+     */
+    public static long getEvictedInterpreterCount() {
+        InterpreterPool current = interpreterPool;
+        return current == null ? 0 : current.getEvictedCount();
+    }
+
+    public static ExecutorStats getExecutorStats() {
+        InterpreterPool current = interpreterPool;
+        if (current == null) {
+            MetricsSnapshot.Latency empty = MetricsSnapshot.Latency.of(new LatencyHistogram());
+            return new ExecutorStats(0, 0, 0, 0, 0, 0, empty, empty);
+        }
+        return new ExecutorStats(
+                current.getInterpreterCount(),
+                current.getQueuedCount(),
+                current.getCompletedCount(),
+                current.getFailedCount(),
+                current.getRejectedCount(),
+                current.getTimedOutCount(),
+                MetricsSnapshot.Latency.of(current.getQueueWait()),
+                MetricsSnapshot.Latency.of(current.getRunTime()));
+    }
+
+    private static CompletableFuture<Object> submit(String scriptName, Map<String, Object> context, long timeoutNanos) {
+        ScriptInfo info = loadedScripts.get(scriptName);
+
+        if (info == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Script not found or not loaded: " + scriptName));
         }
 
         if (!validateContext(info, context)) {
-            System.err.println("Aborting execution of " + scriptName + ". Missing required variables in context.");
-            return;
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Aborting execution of " + scriptName + ". Missing required variables in context."));
         }
+        return pool().submit(scriptName, info, context, timeoutNanos);
+    }
 
-        JepConfig config = new JepConfig();
-        config.addIncludePaths(scriptFolder.getAbsolutePath());
+    private static InterpreterPool pool() {
+        InterpreterPool current = interpreterPool;
+        if (current != null) return current;
 
-        try (SubInterpreter jep = new SubInterpreter(config)) {
-            if (context != null) {
-                for (Map.Entry<String, Object> entry : context.entrySet()) {
-                    jep.set(entry.getKey(), entry.getValue());
-                }
+        synchronized (POOL_LOCK) {
+            if (interpreterPool == null) {
+                InterpreterPool created = new InterpreterPool(PythonManager::createConfig, () -> loadedScripts, poolSize);
+                created.setMaxCalls(maxCallsPerInterpreter);
+                created.setIdleTimeoutNanos(interpreterIdleTimeout.toNanos());
+                created.setMaxQueued(maxQueuedCalls);
+                created.setRejectionPolicy(rejectionPolicy);
+                interpreterPool = created;
             }
-            jep.runScript(info.getFile().getAbsolutePath());
-            jep.invoke("main");
+            return interpreterPool;
+        }
+    }
 
-        } catch (JepException e) {
-            System.err.println("Error executing script " + scriptName);
-            e.printStackTrace();
+    private static JepConfig createConfig() {
+        JepConfig config = new JepConfig();
+        if (scriptFolder != null) {
+            config.addIncludePaths(scriptFolder.getAbsolutePath());
         }
+        return config;
     }
 
-    // TODO: use thenAccept/exceptionally
-    public static CompletableFuture<Void> executeScriptAsync(String scriptName, Map<String, Object> context) {
-        return CompletableFuture.runAsync(() -> executeScript(scriptName, context));
+    private static void reportFailure(String scriptName, Throwable error) {
+        if (error instanceof IllegalArgumentException) {
+            // the script never ran, the message says why
+            System.err.println(error.getMessage());
+            return;
+        }
+        System.err.println("Error executing script " + scriptName);
+        error.printStackTrace();
+    }
+
+    private static String missingVariable(ScriptInfo info, Map<String, Object> shared, Map<String, Object> context) {
+        for (String req : info.getRequiredVars()) {
+            if ((shared == null || !shared.containsKey(req)) && (context == null || !context.containsKey(req))) {
+                return req;
+            }
+        }
+        return null;
     }
 
     private static boolean validateContext(ScriptInfo info, Map<String, Object> context) {
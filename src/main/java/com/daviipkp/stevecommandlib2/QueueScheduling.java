@@ -0,0 +1,27 @@
+package com.daviipkp.stevecommandlib2;
+
+/**
+ * How the engine picks the next QueuedCommand of the global queue.
+ * A command that started always runs until it finishes; the order only decides which one starts next.
+ * Lanes stay FIFO whatever the scheduling
+ */
+public enum QueueScheduling {
+
+    /**
+     * First come, first served. Priorities and deadlines are ignored (deadline misses are still counted)
+     */
+    FIFO,
+
+    /**
+     * Highest priority first, FIFO among equal priorities.
+     * With aging, waiting for the aging step counts as one priority level, so low priorities are never starved
+     */
+    PRIORITY,
+
+    /**
+     * Earliest deadline first, priority breaks ties.
+     * Commands without a deadline get an implicit one of their queue time plus the aging step,
+     * or run after every command with a deadline if aging is off
+     */
+    DEADLINE
+}
@@ -0,0 +1,28 @@
+package com.daviipkp.stevecommandlib2;
+
+/**
+ * What happens to new work when a bounded queue is full
+ */
+public enum RejectionPolicy {
+
+    /**
+     * Refuses the new work with a RejectedExecutionException
+     */
+    REJECT,
+
+    /**
+     * Makes room by refusing the oldest waiting work instead
+     */
+    DROP_OLDEST,
+
+    /**
+     * Waits for room, for as long as the work's own timeout allows (forever if it has none)
+     */
+    BLOCK,
+
+    /**
+     * Runs the new work on the thread that submitted it.
+     * The engine refuses commands instead when they come from its tick thread or go to a command lane
+     */
+    CALLER_RUNS
+}
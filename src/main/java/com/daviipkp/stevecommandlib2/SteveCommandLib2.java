@@ -2,15 +2,36 @@ package com.daviipkp.stevecommandlib2;
 
 import com.daviipkp.stevecommandlib2.instance.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.File;
+import java.io.Serial;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 public class SteveCommandLib2 {
@@ -18,43 +39,121 @@ public class SteveCommandLib2 {
     private static final Logger LOGGER = Logger.getLogger(SteveCommandLib2.class.getName());
 
     // Command Storage
-    private final List<QueuedCommand> queuedCommands = new CopyOnWriteArrayList<>();
-    private final List<TriggeredCommand> triggeredCommands = new CopyOnWriteArrayList<>();
+    private final CommandQueue queuedCommands;
+    private final Map<Object, CommandLane> lanes = new ConcurrentHashMap<>();
+    private final TimingWheel triggerWheel;
+    private final List<TriggerHandle> dueTriggers = new ArrayList<>();
+    private final EventBus eventBus = new EventBus();
+    private final List<EventBus.Delivery> dueEvents = new ArrayList<>();
+    private final ForkJoinPool triggerPool;
+    private final int parallelTriggerThreshold;
 
     // Threading & Execution
     private final ExecutorService pool;
+    private final ScheduledExecutorService scheduler;
+    private volatile Thread tickThread;
+    private final boolean virtualThreads;
+    private final PinningMonitor pinningMonitor;
     private final AtomicLong threadTPS = new AtomicLong(20);
     private final AtomicBoolean shouldTick = new AtomicBoolean(false);
 
     // Metrics & State
-    private long lastTickTime = 0;
+    private final TickClock tickClock;
+    private final EngineMetrics metrics = new EngineMetrics();
+    private final AtomicInteger parallelRunning = new AtomicInteger(0);
+    private final ObjectName jmxName;
     private final AtomicLong commandsExecuted = new AtomicLong(0);
     private final AtomicLong commandsFailed = new AtomicLong(0);
-    private static boolean debugMode = false;
+    private static volatile boolean debugMode = false;
+
+    // Queue Drain (main queue only, written by the tick thread)
+    private final long drainBudgetNanos;
+    private final int drainMaxCommands;
+    private volatile int lastDrainCount = 0;
+    private volatile long lastDrainNanos = 0;
+    private final AtomicLong drainTicks = new AtomicLong(0);
+    private final AtomicLong drainTotalNanos = new AtomicLong(0);
+    private final AtomicLong drainBudgetExhausted = new AtomicLong(0);
+
+    // admission control
+    private final int queueCapacity;
+    private final RejectionPolicy queuePolicy;
+    private final long queueBlockNanos;
+    private final RejectionPolicy triggerPolicy;
+    private final long triggerBlockNanos;
+    private final AtomicLong commandsRejected = new AtomicLong(0);
+    private final AtomicLong commandsDropped = new AtomicLong(0);
+    private final AtomicLong commandsCallerRan = new AtomicLong(0);
 
     /**
      * Private constructor to enforce the use of the Builder
      */
-    private SteveCommandLib2(int nThreads, long tps, boolean debug, File scriptFolder) {
-        this.pool = Executors.newFixedThreadPool(nThreads);
-        this.threadTPS.set(tps);
-        this.debugMode = debug;
+    private SteveCommandLib2(Builder builder) {
+        this.virtualThreads = builder.virtualThreads;
+        if (virtualThreads) {
+            this.pool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("SteveLib-Virtual-", 0).factory());
+            this.pinningMonitor = new PinningMonitor();
+            this.pinningMonitor.start(builder.pinningThreshold);
+        } else {
+            this.pool = Executors.newFixedThreadPool(builder.threads, Thread.ofPlatform().name("SteveLib-Worker-", 0).factory());
+            this.pinningMonitor = null;
+        }
+        this.queueCapacity = builder.queueCapacity;
+        this.queuePolicy = builder.queuePolicy;
+        this.queueBlockNanos = builder.queueBlockNanos;
+        this.triggerPolicy = builder.triggerPolicy;
+        this.triggerBlockNanos = builder.triggerBlockNanos;
+        this.queuedCommands = new CommandQueue(builder.queueScheduling, builder.agingNanos, builder.queueCapacity);
+        this.triggerWheel = new TimingWheel(builder.triggerCapacity, builder.triggerPolicy == RejectionPolicy.DROP_OLDEST);
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("SteveLib-Scheduler").daemon(true).factory());
+        // a cancelled task leaves the queue right away instead of waiting for its delay
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+        this.threadTPS.set(builder.tps);
+        this.debugMode = builder.debug;
+        this.drainBudgetNanos = builder.drainBudgetNanos;
+        this.drainMaxCommands = builder.drainMaxCommands;
+        this.tickClock = new TickClock(builder.overrunPolicy);
+        this.parallelTriggerThreshold = builder.parallelTriggerThreshold;
+        this.triggerPool = builder.parallelTriggerThreshold > 0 ? createTriggerPool(builder) : null;
+        this.jmxName = builder.jmxName != null ? registerMBean(builder.jmxName) : null;
 
-        if (scriptFolder != null) {
-            PythonManager.setScriptFolder(scriptFolder);
+        if (builder.scriptFolder != null) {
+            PythonManager.setScriptFolder(builder.scriptFolder);
         }
 
         if (debugMode) {
             LOGGER.setLevel(Level.ALL);
-            LOGGER.info("SteveCommandLib2 initialized in DEBUG mode with " + nThreads + " threads.");
+            LOGGER.info("SteveCommandLib2 initialized in DEBUG mode with " + (virtualThreads ? "virtual" : builder.threads) + " threads.");
+        }
+    }
+
+    private ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.daviipkp.stevecommandlib2:type=Engine,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new EngineMetricsBean(this::getMetrics), objectName);
+            return objectName;
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not register engine metrics MBean '" + name + "'", e);
+            return null;
         }
     }
 
+    private static ForkJoinPool createTriggerPool(Builder builder) {
+        int parallelism = builder.virtualThreads ? Runtime.getRuntime().availableProcessors() : builder.threads;
+        return new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("SteveLib-Trigger-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
     /**
      * Adds a command to the execution pipeline based on its type
      *
      * @param command The command instance
-     * @throws IllegalArgumentException if the command type is unknown or null
+     * @throws IllegalArgumentException   if the command type is unknown or null
+     * @throws RejectedExecutionException if the queue (or the trigger wheel) is full and the rejection policy refused it
      */
     public void addCommand(Command command) {
         if (command == null) {
@@ -63,19 +162,27 @@ public class SteveCommandLib2 {
 
         switch (command) {
             case QueuedCommand q -> {
-                queuedCommands.add(q);
-                logDebug("Added QueuedCommand: " + command.getClass().getSimpleName() + " (Queue size: " + queuedCommands.size() + ")");
+                if (!enqueue(null, q, queueBlockNanos)) {
+                    throw new RejectedExecutionException("Command queue is full (" + queueCapacity + " commands), " + q.getID() + " was rejected");
+                }
+                if (debugMode) {
+                    logDebug("Added QueuedCommand: " + command.getClass().getSimpleName() + " (Queue size: " + queuedCommands.size() + ")");
+                }
+            }
+            case CommandGraph g -> {
+                g.run(this);
+                if (debugMode) {
+                    logDebug("Submitted CommandGraph: " + command.getClass().getSimpleName() + " (" + g.getNodes().size() + " nodes) to thread pool.");
+                }
             }
             case ParallelCommand p -> {
                 p.start();
                 addToParallelPool(p);
-                logDebug("Submitted ParallelCommand: " + command.getClass().getSimpleName() + " to thread pool.");
-            }
-            case TriggeredCommand t -> {
-                t.start();
-                triggeredCommands.add(t);
-                logDebug("Registered TriggeredCommand: " + command.getClass().getSimpleName());
+                if (debugMode) {
+                    logDebug("Submitted ParallelCommand: " + command.getClass().getSimpleName() + " to thread pool.");
+                }
             }
+            case TriggeredCommand t -> addTrigger(t);
             default -> {
                 commandsFailed.incrementAndGet();
                 throw new IllegalArgumentException("Unsupported command type: " + command.getClass().getName());
@@ -83,21 +190,402 @@ public class SteveCommandLib2 {
         }
     }
 
+    /**
+     * Same as addCommand, but reports a refusal instead of throwing
+     *
+     * @param command The command instance
+     * @return false if the queue (or the trigger wheel) is full and the rejection policy refused the command.
+     *         DROP_OLDEST always accepts it, CALLER_RUNS too unless called from the tick thread
+     * @throws IllegalArgumentException if the command type is unknown or null
+     */
+    public boolean offerCommand(Command command) {
+        return offerCommand(command, (Duration) null);
+    }
+
+    /**
+     * Same as offerCommand(command), waiting at most timeout for room when the rejection policy is BLOCK
+     *
+     * @param timeout Overrides the block timeout set on the Builder, null to keep it
+     */
+    public boolean offerCommand(Command command, Duration timeout) {
+        if (command == null) {
+            throw new IllegalArgumentException("Cannot add a null command to the pipeline.");
+        }
+        switch (command) {
+            case QueuedCommand q -> {
+                return enqueue(null, q, timeout != null ? timeout.toNanos() : queueBlockNanos);
+            }
+            case TriggeredCommand t -> {
+                return admitTrigger(t, timeout != null ? timeout.toNanos() : triggerBlockNanos) != null;
+            }
+            default -> {
+                // parallel commands go to the pool, which has no capacity
+                addCommand(command);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Same as addCommand(key, command), but reports a refusal instead of throwing
+     *
+     * @return false if the lane is full and the rejection policy refused the command
+     */
+    public boolean offerCommand(Object key, QueuedCommand command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Cannot add a null command to the pipeline.");
+        }
+        return enqueue(key, command, queueBlockNanos);
+    }
+
+    /**
+     * Starts and registers a TriggeredCommand. Its checks are scheduled on a timing wheel,
+     * so a tick only touches the triggers whose timeBetweenChecks has elapsed
+     *
+     * @param command The trigger instance
+     * @return A handle that can cancel the trigger in O(1). With CALLER_RUNS, the trigger already ran and the handle is done
+     * @throws IllegalArgumentException   if the command is null
+     * @throws RejectedExecutionException if the trigger wheel is full and the rejection policy refused it
+     */
+    public TriggerHandle addTrigger(TriggeredCommand command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Cannot add a null command to the pipeline.");
+        }
+        TriggerHandle handle = admitTrigger(command, triggerBlockNanos);
+        if (handle == null) {
+            throw new RejectedExecutionException("Trigger capacity reached (" + triggerWheel.getCapacity() + " triggers), " + command.getID() + " was rejected");
+        }
+        return handle;
+    }
+
+    /**
+     * Queues a command in the global queue (null key) or in a lane, applying the queue rejection policy when it's full
+     *
+     * @param blockNanos How long BLOCK waits for room, negative to wait as long as needed
+     * @return false if the command was refused
+     */
+    private boolean enqueue(Object key, QueuedCommand command, long blockNanos) {
+        if (offerTo(key, command)) return true;
+
+        switch (queuePolicy) {
+            case DROP_OLDEST -> {
+                do {
+                    CommandQueue queue = key == null ? queuedCommands : laneQueue(key);
+                    if (queue == null) continue;
+                    if (queue.dropOldest()) {
+                        commandsDropped.incrementAndGet();
+                    } else if (queue.getCapacity() == 1) {
+                        // the only command queued already started, there's nothing to drop
+                        return refuse(command);
+                    } else {
+                        // only the head can't be dropped, so the rest was reserved by producers that didn't link yet
+                        Thread.yield();
+                    }
+                } while (!offerTo(key, command));
+                return true;
+            }
+            case BLOCK -> {
+                if (Thread.currentThread() == tickThread || isLaneConsumer(key)) {
+                    // only the tick makes room in the global queue, and only a lane's own drain makes room in it:
+                    // waiting on the thread that does it would never end
+                    return refuse(command);
+                }
+                long deadline = System.nanoTime() + blockNanos;
+                do {
+                    long left = blockNanos < 0 ? -1 : deadline - System.nanoTime();
+                    if (blockNanos >= 0 && left <= 0) return refuse(command);
+                    CommandQueue queue = key == null ? queuedCommands : laneQueue(key);
+                    if (queue != null && !queue.awaitSpace(left)) return refuse(command);
+                } while (!offerTo(key, command));
+                return true;
+            }
+            case CALLER_RUNS -> {
+                if (Thread.currentThread() == tickThread || key != null) {
+                    // stepping it here would stall the tick, and on a lane it would run next to the lane's head
+                    return refuse(command);
+                }
+                runOnCaller(command);
+                return true;
+            }
+            default -> {
+                return refuse(command);
+            }
+        }
+    }
+
+    private boolean offerTo(Object key, QueuedCommand command) {
+        if (key == null) {
+            return queuedCommands.tryOffer(command);
+        }
+        while (true) {
+            CommandLane lane = lanes.get(key);
+            if (lane == null) {
+                CommandLane created = new CommandLane(queueCapacity);
+                lane = lanes.putIfAbsent(key, created);
+                if (lane == null) lane = created;
+            }
+            // a lane can't be retired while we are adding to it
+            if (lane.enter()) {
+                try {
+                    return lane.queue.tryOffer(command);
+                } finally {
+                    lane.exit();
+                }
+            }
+            // retired by the tick, take it out of the map if it didn't yet and start a new one
+            lanes.remove(key, lane);
+        }
+    }
+
+    private boolean isLaneConsumer(Object key) {
+        if (key == null) return false;
+        CommandLane lane = lanes.get(key);
+        return lane != null && lane.consumer == Thread.currentThread();
+    }
+
+    /**
+     * Waits until the global queue holds fewer than depth commands, never more than its capacity.
+     * Used by CommandIngestor to pause reading
+     *
+     * @return false if the thread was interrupted (the interrupt flag is kept)
+     */
+    boolean awaitQueueBelow(int depth) {
+        return queuedCommands.awaitBelow(Math.min(depth, queueCapacity), -1);
+    }
+
+    private CommandQueue laneQueue(Object key) {
+        CommandLane lane = lanes.get(key);
+        return lane != null ? lane.queue : null;
+    }
+
+    private boolean refuse(Command command) {
+        commandsRejected.incrementAndGet();
+        if (debugMode) {
+            logDebug("Rejected " + command.getClass().getSimpleName() + ": capacity reached");
+        }
+        return false;
+    }
+
+    /**
+     * CALLER_RUNS for queued commands: steps the command on the calling thread, once per frame, until it finishes.
+     * It skips the queue, so it can run before commands that were queued earlier. Never called on the tick thread or for a lane
+     */
+    private void runOnCaller(QueuedCommand command) {
+        commandsCallerRan.incrementAndGet();
+        long frameNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, threadTPS.get());
+        long last = System.nanoTime();
+        try {
+            while (!command.isFinished()) {
+                if (!command.isRunning()) {
+                    command.start();
+                }
+                long now = System.nanoTime();
+                command.execute(TimeUnit.NANOSECONDS.toMillis(now - last));
+                metrics.recordCommand(command.getClass(), System.nanoTime() - now);
+                last = now;
+                if (!command.isFinished()) {
+                    LockSupport.parkNanos(frameNanos - (System.nanoTime() - now));
+                }
+            }
+            commandsExecuted.incrementAndGet();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error executing QueuedCommand: " + command.getClass().getSimpleName(), e);
+            commandsFailed.incrementAndGet();
+            metrics.recordFailure(command.getClass());
+        }
+        command.recycle();
+    }
+
+    /**
+     * Registers a trigger, applying the trigger rejection policy when the wheel is full
+     *
+     * @return The handle, or null if the trigger was refused
+     */
+    private TriggerHandle admitTrigger(TriggeredCommand command, long blockNanos) {
+        if (!triggerWheel.tryReserve()) {
+            switch (triggerPolicy) {
+                case DROP_OLDEST -> {
+                    do {
+                        TriggerHandle victim = triggerWheel.dropOldest();
+                        if (victim != null) {
+                            commandsDropped.incrementAndGet();
+                        } else {
+                            // the oldest one is being cancelled or registered right now
+                            Thread.onSpinWait();
+                        }
+                    } while (!triggerWheel.tryReserve());
+                }
+                case BLOCK -> {
+                    if (Thread.currentThread() == tickThread) {
+                        refuse(command);
+                        return null;
+                    }
+                    long deadline = System.nanoTime() + blockNanos;
+                    do {
+                        long left = blockNanos < 0 ? -1 : deadline - System.nanoTime();
+                        if ((blockNanos >= 0 && left <= 0) || !triggerWheel.awaitSpace(left)) {
+                            refuse(command);
+                            return null;
+                        }
+                    } while (!triggerWheel.tryReserve());
+                }
+                case CALLER_RUNS -> {
+                    if (Thread.currentThread() == tickThread) {
+                        refuse(command);
+                        return null;
+                    }
+                    return runTriggerOnCaller(command);
+                }
+                default -> {
+                    refuse(command);
+                    return null;
+                }
+            }
+        }
+        command.start();
+        TriggerHandle handle = triggerWheel.registerReserved(command);
+        eventBus.subscribe(handle);
+        if (debugMode) {
+            logDebug("Registered TriggeredCommand: " + command.getClass().getSimpleName());
+        }
+        return handle;
+    }
+
+    /**
+     * CALLER_RUNS for triggers: checks the trigger on the calling thread every timeBetweenChecks until it finishes.
+     * Event-only triggers can't be woken outside the engine, so they are refused instead
+     */
+    private TriggerHandle runTriggerOnCaller(TriggeredCommand command) {
+        if (!command.isPolling()) {
+            refuse(command);
+            return null;
+        }
+        commandsCallerRan.incrementAndGet();
+        TriggerHandle handle = new TriggerHandle(command, triggerWheel);
+        command.start();
+        long last = System.nanoTime();
+        try {
+            while (command.isRunning() && !command.isFinished()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, command.getTimeBetweenChecks())));
+                long now = System.nanoTime();
+                command.evaluate(TimeUnit.NANOSECONDS.toMillis(now - last));
+                metrics.recordCommand(command.getClass(), System.nanoTime() - now);
+                last = now;
+            }
+            commandsExecuted.incrementAndGet();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error executing TriggeredCommand: " + command.getClass().getSimpleName(), e);
+            commandsFailed.incrementAndGet();
+            metrics.recordFailure(command.getClass());
+        }
+        handle.markDone();
+        return handle;
+    }
+
+    /**
+     * Publishes an event on a named topic. Every trigger subscribed to the topic is
+     * checked on the next tick, without waiting for its timeBetweenChecks
+     *
+     * @param topic   The topic name
+     * @param payload Any object, handed to TriggeredCommand.onEvent
+     * @return How many triggers were woken
+     */
+    public int publish(String topic, Object payload) {
+        return eventBus.publish(topic, payload);
+    }
+
+    /**
+     * Publishes a typed event. Triggers subscribed to its class, a superclass or an interface are woken
+     *
+     * @param event The event object
+     * @return How many triggers were woken
+     * @throws IllegalArgumentException if the event is null
+     */
+    public int publish(Object event) {
+        if (event == null) {
+            throw new IllegalArgumentException("Cannot publish a null event.");
+        }
+        return eventBus.publish(event);
+    }
+
+    /**
+     * Adds a QueuedCommand to the sequential lane identified by key.
+     * Commands inside the same lane run one after another, in the order they were added,
+     * while different lanes are advanced at the same time on the thread pool
+     *
+     * @param key     The lane key (a player, an entity, a connection...). null uses the global queue
+     * @param command The command instance
+     * @throws IllegalArgumentException   if the command is null
+     * @throws RejectedExecutionException if the lane is full and the rejection policy refused the command
+     */
+    public void addCommand(Object key, QueuedCommand command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Cannot add a null command to the pipeline.");
+        }
+        if (key == null) {
+            addCommand(command);
+            return;
+        }
+
+        if (!enqueue(key, command, queueBlockNanos)) {
+            throw new RejectedExecutionException("Lane '" + key + "' is full (" + queueCapacity + " commands), " + command.getID() + " was rejected");
+        }
+        if (debugMode) {
+            logDebug("Added QueuedCommand: " + command.getClass().getSimpleName() + " to lane '" + key + "'");
+        }
+    }
+
     /**
      * Cancels and removes all pending queued and triggered commands
      */
     public void flushCommands() {
         queuedCommands.clear();
-        triggeredCommands.clear();
+        for (CommandLane lane : lanes.values()) {
+            lane.queue.clear();
+        }
+        triggerWheel.clear();
+        eventBus.clear();
         logDebug("All pending commands have been flushed.");
     }
 
     /**
-     * Returns an unmodifiable view of the currently queued commands
+     * Returns an unmodifiable snapshot of the currently queued commands
      */
     public List<QueuedCommand> getQueuedCommands() {
-        return Collections.unmodifiableList(queuedCommands);
+        return Collections.unmodifiableList(queuedCommands.snapshot());
     }
+
+    /**
+     * Returns an unmodifiable snapshot of the commands queued in a lane
+     *
+     * @param key The lane key used in addCommand(key, command)
+     */
+    public List<QueuedCommand> getQueuedCommands(Object key) {
+        CommandLane lane = lanes.get(key);
+        if (lane == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(lane.queue.snapshot());
+    }
+
+    /**
+     * @return The number of lanes that currently hold commands
+     */
+    public int getActiveLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * @return Commands waiting in the global queue plus every lane
+     */
+    public int getQueueDepth() {
+        int depth = queuedCommands.size();
+        for (CommandLane lane : lanes.values()) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+
     /**
      * Starts the main processing loop in a separate thread
      */
@@ -108,22 +596,15 @@ public class SteveCommandLib2 {
         }
 
         shouldTick.set(true);
-        lastTickTime = System.currentTimeMillis();
+        tickClock.reset();
 
-        pool.submit(() -> {
-            Thread.currentThread().setName("SteveLib-MainTick-Thread");
+        // the tick loop gets its own thread, so work on the pool can never starve it
+        tickThread = Thread.ofPlatform().name("SteveLib-MainTick-Thread").start(() -> {
             while (shouldTick.get()) {
                 try {
-                    long now = System.currentTimeMillis();
-                    long delta = now - lastTickTime;
-
+                    long delta = tickClock.awaitTick();
                     tick(delta);
-                    lastTickTime = now;
-                    long targetFrameTime = 1000L / Math.max(1, threadTPS.get());
-                    long processingTime = System.currentTimeMillis() - now;
-                    long sleepTime = Math.max(1, targetFrameTime - processingTime);
-
-                    Thread.sleep(sleepTime);
+                    tickClock.advance(TimeUnit.SECONDS.toNanos(1) / Math.max(1, threadTPS.get()));
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     LOGGER.severe("Main tick thread interrupted!");
@@ -143,8 +624,16 @@ public class SteveCommandLib2 {
         shouldTick.set(false);
         logDebug("Initiating engine shutdown...");
 
+        scheduler.shutdownNow();
         pool.shutdown();
+        if (triggerPool != null) {
+            triggerPool.shutdown();
+        }
         try {
+            Thread ticker = tickThread;
+            if (ticker != null && ticker != Thread.currentThread()) {
+                ticker.join(2000);
+            }
             if (!pool.awaitTermination(2, TimeUnit.SECONDS)) {
                 pool.shutdownNow();
             }
@@ -152,81 +641,393 @@ public class SteveCommandLib2 {
             pool.shutdownNow();
             Thread.currentThread().interrupt();
         }
+        if (pinningMonitor != null) {
+            pinningMonitor.stop();
+        }
+        if (jmxName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(jmxName);
+            } catch (JMException e) {
+                LOGGER.log(Level.FINE, "Engine metrics MBean was already unregistered", e);
+            }
+        }
         LOGGER.info("SteveCommandLib2 engine stopped. Executed: " + commandsExecuted.get() + " | Failed: " + commandsFailed.get());
     }
 
-    private void tick(long tickDelta) {
+    // package-private so the benchmarks can run single ticks without the tick thread
+    void tick(long tickDelta) {
+        long start = System.nanoTime();
         processQueuedCommands(tickDelta);
+        processLanes(tickDelta);
         processTriggeredCommands(tickDelta);
+        metrics.recordTick(System.nanoTime() - start);
     }
 
     private void processQueuedCommands(long tickDelta) {
-        if (queuedCommands.isEmpty()) return;
+        if (queuedCommands.isEmpty()) {
+            lastDrainCount = 0;
+            lastDrainNanos = 0;
+            return;
+        }
+
+        long start = System.nanoTime();
+        int drained = drainQueue(queuedCommands, tickDelta);
+        long used = System.nanoTime() - start;
+
+        lastDrainCount = drained;
+        lastDrainNanos = used;
+        drainTicks.incrementAndGet();
+        drainTotalNanos.addAndGet(used);
+        if (drainBudgetNanos > 0 && used >= drainBudgetNanos) {
+            drainBudgetExhausted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Hands one step of every non-empty lane to the pool.
+     * A lane that is still running its previous step is skipped, and the skipped time is added to its next delta
+     */
+    private void processLanes(long tickDelta) {
+        if (lanes.isEmpty()) return;
+
+        for (Map.Entry<Object, CommandLane> entry : lanes.entrySet()) {
+            CommandLane lane = entry.getValue();
+            lane.pendingDelta.addAndGet(tickDelta);
+
+            if (lane.queue.isEmpty()) {
+                if (!lane.scheduled.get() && lane.retire()) {
+                    lanes.remove(entry.getKey(), lane);
+                }
+                continue;
+            }
+            if (!lane.scheduled.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                pool.execute(() -> {
+                    lane.consumer = Thread.currentThread();
+                    try {
+                        drainQueue(lane.queue, lane.pendingDelta.getAndSet(0));
+                    } finally {
+                        lane.consumer = null;
+                        lane.scheduled.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                lane.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Executes queued commands from the head of the queue until one of them needs another tick,
+     * the count limit is reached or the time budget runs out.
+     * Whatever is left stays in the queue for the next tick
+     *
+     * @return How many commands were stepped
+     */
+    private int drainQueue(CommandQueue queue, long delta) {
+        long start = drainBudgetNanos > 0 ? System.nanoTime() : 0;
+        int steps = 0;
+
+        while (steps < drainMaxCommands) {
+            QueuedCommand q = queue.peek();
+            if (q == null) break;
 
-        QueuedCommand q = queuedCommands.getFirst();
+            steps++;
+            if (!stepQueue(queue, q, delta)) break;
+            if (drainBudgetNanos > 0 && System.nanoTime() - start >= drainBudgetNanos) break;
+        }
+        return steps;
+    }
+
+    /**
+     * @return true if the command left the queue (finished or failed). False when it needs another tick,
+     *         or when it ended but a producer is still linking behind it, so it stays at the head until the next tick
+     */
+    private boolean stepQueue(CommandQueue queue, QueuedCommand q, long delta) {
         try {
             if (!q.isFinished()) {
                 if (!q.isRunning()) {
                     q.start();
                 }
-                q.execute(tickDelta);
+                long start = System.nanoTime();
+                q.execute(delta);
+                metrics.recordCommand(q.getClass(), System.nanoTime() - start);
                 if (q.isFinished()) {
-                    queuedCommands.removeFirst();
                     commandsExecuted.incrementAndGet();
+                    recordDeadline(q);
+                    return release(queue, q);
                 }
-            } else {
-                queuedCommands.removeFirst();
+                return false;
             }
+            // ended in an earlier step that couldn't take it out of the queue
+            return release(queue, q);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error executing QueuedCommand: " + q.getClass().getSimpleName(), e);
-            queuedCommands.removeFirst();
             commandsFailed.incrementAndGet();
+            metrics.recordFailure(q.getClass());
+            recordDeadline(q);
+            // if it can't leave the queue yet, the next step only retries the removal
+            q.finish();
+            return release(queue, q);
         }
     }
 
+    // has to run before release(), a pooled command loses its deadline when it's recycled
+    private void recordDeadline(QueuedCommand q) {
+        if (q.hasDeadline()) {
+            metrics.recordDeadline(System.nanoTime() - q.getDeadlineNanoTime());
+        }
+    }
+
+    // pooled commands go back to their pool as soon as they leave the queue
+    private static boolean release(CommandQueue queue, QueuedCommand q) {
+        if (!queue.removeHead(q)) return false;
+        q.recycle();
+        return true;
+    }
+
     private void processTriggeredCommands(long tickDelta) {
-        if (triggeredCommands.isEmpty()) return;
+        processEvents();
 
-        for (TriggeredCommand command : triggeredCommands) {
-            try {
-                command.tick(tickDelta);
-                if (command.isFinished()) {
-                    triggeredCommands.remove(command);
-                    commandsExecuted.incrementAndGet();
-                }
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Error executing TriggeredCommand: " + command.getClass().getSimpleName(), e);
-                triggeredCommands.remove(command);
-                commandsFailed.incrementAndGet();
+        triggerWheel.advance(tickDelta, dueTriggers);
+        if (dueTriggers.isEmpty()) return;
+
+        boolean parallel = triggerPool != null && dueTriggers.size() >= parallelTriggerThreshold;
+        if (parallel) {
+            int leafSize = Math.max(16, dueTriggers.size() / (triggerPool.getParallelism() * 4));
+            triggerPool.invoke(new TriggerBatch(dueTriggers, 0, dueTriggers.size(), leafSize));
+        }
+        for (TriggerHandle handle : dueTriggers) {
+            if (!parallel || handle.getCommand().isSingleThreaded()) {
+                checkTrigger(handle, null);
             }
+            settleTrigger(handle);
         }
+        dueTriggers.clear();
     }
 
-    private void addToParallelPool(ParallelCommand command) {
-        pool.submit(() -> {
-            Thread.currentThread().setName("SteveLib-Parallel-" + command.getClass().getSimpleName());
-            long lastTime = System.currentTimeMillis();
+    private void processEvents() {
+        eventBus.drain(dueEvents);
+        if (dueEvents.isEmpty()) return;
+        // a trigger subscribes after it's added to the wheel inbox, so once its events are drained
+        // this places it and detach() finds it, even if it was added after the last tick
+        triggerWheel.applyPending();
 
-            try {
-                while (command.isRunning() && shouldTick.get()) {
-                    long now = System.currentTimeMillis();
-                    long localDelta = now - lastTime;
-                    long targetFrameTime = 1000L / Math.max(1, threadTPS.get());
-
-                    if (localDelta >= targetFrameTime) {
-                        command.execute(localDelta);
-                        lastTime = now;
-                    } else {
-                        Thread.sleep(1);
+        for (EventBus.Delivery delivery : dueEvents) {
+            if (triggerWheel.detach(delivery.handle())) {
+                checkTrigger(delivery.handle(), delivery);
+                settleTrigger(delivery.handle());
+            }
+        }
+        dueEvents.clear();
+    }
+
+    /**
+     * Checks a trigger that was taken out of the wheel. Any exception is kept in the handle,
+     * so this can run on any thread and settleTrigger() deals with it on the tick thread
+     *
+     * @param event The event that woke it, or null for a regular polling check
+     */
+    private void checkTrigger(TriggerHandle handle, EventBus.Delivery event) {
+        TriggeredCommand command = handle.getCommand();
+        long start = System.nanoTime();
+        try {
+            long delta = triggerWheel.elapsedSince(handle);
+            if (event == null) {
+                command.evaluate(delta);
+            } else {
+                command.evaluateEvent(event.topic(), event.payload(), delta);
+            }
+            metrics.recordCommand(command.getClass(), System.nanoTime() - start);
+        } catch (Exception e) {
+            handle.failure = e;
+        }
+    }
+
+    /**
+     * Puts a checked trigger back in the wheel, or removes it if it finished or failed
+     */
+    private void settleTrigger(TriggerHandle handle) {
+        TriggeredCommand command = handle.getCommand();
+        Exception failure = handle.failure;
+        handle.failure = null;
+
+        if (failure != null) {
+            LOGGER.log(Level.SEVERE, "Error executing TriggeredCommand: " + command.getClass().getSimpleName(), failure);
+            completeTrigger(handle);
+            commandsFailed.incrementAndGet();
+            metrics.recordFailure(command.getClass());
+        } else if (command.isFinished()) {
+            completeTrigger(handle);
+            commandsExecuted.incrementAndGet();
+        } else {
+            triggerWheel.reschedule(handle);
+        }
+    }
+
+    /**
+     * Checks a range of due triggers, splitting it across the trigger pool.
+     * @SingleThreaded triggers are skipped here and checked later on the tick thread
+     */
+    private final class TriggerBatch extends RecursiveAction {
+        // ForkJoinTask is Serializable, but a batch only lives for one tick and is never serialized
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<TriggerHandle> handles;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        private TriggerBatch(List<TriggerHandle> handles, int from, int to, int leafSize) {
+            this.handles = handles;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                for (int i = from; i < to; i++) {
+                    TriggerHandle handle = handles.get(i);
+                    if (!handle.getCommand().isSingleThreaded()) {
+                        checkTrigger(handle, null);
                     }
                 }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TriggerBatch(handles, from, mid, leafSize), new TriggerBatch(handles, mid, to, leafSize));
+        }
+    }
+
+    private void completeTrigger(TriggerHandle handle) {
+        triggerWheel.complete(handle);
+        eventBus.unsubscribe(handle);
+    }
+
+    private void addToParallelPool(ParallelCommand command) {
+        parallelRunning.incrementAndGet();
+        new ParallelStep(command, null).scheduleNext(0);
+    }
+
+    /**
+     * Starts a ParallelCommand like addCommand does, and returns a future for its end.
+     * A CommandGraph is run with CommandGraph.run, so its children get their own steps on the pool
+     *
+     * @param command The command instance
+     * @return Completes with the command once it stops running. Fails with the exception it threw,
+     *         or with CancellationException if the engine stops first
+     * @throws IllegalArgumentException if the command is null
+     */
+    public <T extends ParallelCommand> CompletableFuture<T> addParallelCommand(T command) {
+        if (command == null) {
+            throw new IllegalArgumentException("Cannot add a null command to the pipeline.");
+        }
+        if (command instanceof CommandGraph graph) {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<T> done = (CompletableFuture<T>) graph.run(this);
+            return done;
+        }
+        CompletableFuture<T> done = new CompletableFuture<>();
+        command.start();
+        parallelRunning.incrementAndGet();
+        new ParallelStep(command, error -> {
+            if (error == null) done.complete(command);
+            else done.completeExceptionally(error);
+        }).scheduleNext(0);
+        return done;
+    }
+
+    /**
+     * Runs a task once on the engine's scheduler thread after the delay, for deadlines and timeouts.
+     * The same thread paces parallel commands, so the task should be short
+     *
+     * @param task  The task to run
+     * @param delay How long to wait, from now
+     * @return The pending task, cancelling it removes it from the scheduler right away
+     * @throws RejectedExecutionException if the engine was stopped
+     */
+    public ScheduledFuture<?> schedule(Runnable task, Duration delay) {
+        return scheduler.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs one frame of a ParallelCommand on the pool and schedules the next one.
+     * Nothing holds a thread between frames, so any number of parallel commands share the pool
+     */
+    private final class ParallelStep implements Runnable {
+        private final ParallelCommand command;
+        // told how the command ended (null error when it finished normally), may be null
+        private final Consumer<Exception> onDone;
+        private long lastTime = System.nanoTime();
+
+        private ParallelStep(ParallelCommand command, Consumer<Exception> onDone) {
+            this.command = command;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run() {
+            if (!command.isRunning()) {
+                commandsExecuted.incrementAndGet();
+                done(null);
+                return;
+            }
+            if (!shouldTick.get()) {
                 commandsExecuted.incrementAndGet();
+                done(new CancellationException("Engine stopped before " + command.getID() + " finished"));
+                return;
+            }
+
+            long now = System.nanoTime();
+            try {
+                command.execute(TimeUnit.NANOSECONDS.toMillis(now - lastTime));
+                metrics.recordCommand(command.getClass(), System.nanoTime() - now);
+                lastTime = now;
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "Error in parallel command execution: " + command.getClass().getSimpleName(), e);
                 command.finish();
                 commandsFailed.incrementAndGet();
+                metrics.recordFailure(command.getClass());
+                done(e);
+                return;
             }
-        });
+
+            if (!command.isRunning()) {
+                commandsExecuted.incrementAndGet();
+                done(null);
+                return;
+            }
+            scheduleNext(System.nanoTime() - now);
+        }
+
+        private void done(Exception error) {
+            parallelRunning.decrementAndGet();
+            if (onDone != null) onDone.accept(error);
+        }
+
+        private void scheduleNext(long elapsedNanos) {
+            long frameNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, threadTPS.get());
+            try {
+                scheduler.schedule(this::submit, Math.max(0, frameNanos - elapsedNanos), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // engine is shutting down
+                done(e);
+            }
+        }
+
+        private void submit() {
+            try {
+                pool.execute(this);
+            } catch (RejectedExecutionException e) {
+                // engine is shutting down
+                done(e);
+            }
+        }
     }
 
     private void logDebug(String message) {
@@ -241,10 +1042,215 @@ public class SteveCommandLib2 {
         }
     }
 
+    /**
+     * Same as systemPrint(String), but the message is only built when debug mode is on
+     */
+    public static void systemPrint(Supplier<String> message) {
+        if (debugMode) {
+            LOGGER.info("[SteveCommandLib2] " + message.get());
+        }
+    }
+
+    /**
+     * @return true if debug output is on. Check it before building an expensive message
+     */
+    public static boolean isDebugMode() { return debugMode; }
+
     public long getThreadTPS() { return threadTPS.get(); }
     public void setThreadTPS(long tps) { this.threadTPS.set(tps); }
     public void setDebugMode(boolean debug) { debugMode = debug; }
     public long getCommandsExecutedCount() { return commandsExecuted.get(); }
+    public long getCommandsFailedCount() { return commandsFailed.get(); }
+
+    /**
+     * Collects a snapshot of every engine metric: counters, gauges, tick duration
+     * and the execution latency of each command class
+     */
+    public MetricsSnapshot getMetrics() {
+        long executed = commandsExecuted.get();
+        long failed = commandsFailed.get();
+        double failureRate = executed + failed == 0 ? 0 : (double) failed / (executed + failed);
+
+        int queueDepth = getQueueDepth();
+
+        int active = -1;
+        double saturation = -1;
+        int queuedTasks = -1;
+        if (pool instanceof ThreadPoolExecutor tpe) {
+            active = tpe.getActiveCount();
+            saturation = (double) active / Math.max(1, tpe.getMaximumPoolSize());
+            queuedTasks = tpe.getQueue().size();
+        }
+
+        return new MetricsSnapshot(
+                executed,
+                failed,
+                failureRate,
+                commandsRejected.get(),
+                commandsDropped.get(),
+                commandsCallerRan.get(),
+                queueDepth,
+                lanes.size(),
+                triggerWheel.size(),
+                parallelRunning.get(),
+                active,
+                saturation,
+                queuedTasks,
+                tickClock.getTickCount(),
+                tickClock.getOverrunCount(),
+                metrics.tickLatency(),
+                metrics.deadlinesMet(),
+                metrics.deadlinesMissed(),
+                metrics.deadlineLateness(),
+                metrics.commandStats());
+    }
+    public int getTriggerCount() { return triggerWheel.size(); }
+    public boolean isUsingVirtualThreads() { return virtualThreads; }
+    public OverrunPolicy getOverrunPolicy() { return tickClock.getPolicy(); }
+    public long getTickCount() { return tickClock.getTickCount(); }
+
+    /**
+     * @return How many ticks ran past the start of the next one
+     */
+    public long getTickOverrunCount() { return tickClock.getOverrunCount(); }
+
+    /**
+     * @return How many ticks were dropped by the overrun policy
+     */
+    public long getSkippedTickCount() { return tickClock.getSkippedTickCount(); }
+
+    /**
+     * @return How late (in ns) the last tick started compared to its schedule
+     */
+    public long getLastTickJitterNanos() { return tickClock.getLastJitterNanos(); }
+    public long getMaxTickJitterNanos() { return tickClock.getMaxJitterNanos(); }
+    public long getAverageTickJitterNanos() { return tickClock.getAverageJitterNanos(); }
+
+    /**
+     * @return How many times a virtual thread got pinned to its carrier for longer than the threshold
+     * (always 0 when not using virtual threads)
+     */
+    public long getVirtualThreadPinnedCount() {
+        return pinningMonitor != null ? pinningMonitor.getPinnedCount() : 0;
+    }
+
+    /**
+     * @return Total nanoseconds virtual threads spent pinned (only pins above the threshold are counted)
+     */
+    public long getVirtualThreadPinnedNanos() {
+        return pinningMonitor != null ? pinningMonitor.getPinnedNanos() : 0;
+    }
+
+    /**
+     * @return The method that caused the last recorded pin (class.method:line), or null
+     */
+    public String getLastPinnedFrame() {
+        return pinningMonitor != null ? pinningMonitor.getLastPinnedFrame() : null;
+    }
+
+    /**
+     * @return How many queued commands were stepped in the last tick
+     */
+    public int getLastDrainCount() { return lastDrainCount; }
+
+    /**
+     * @return Nanoseconds the last tick spent draining the queue
+     */
+    public long getLastDrainNanos() { return lastDrainNanos; }
+
+    /**
+     * @return Fraction of the drain budget used by the last tick (0 when no budget is configured)
+     */
+    public double getLastDrainBudgetUsage() {
+        return drainBudgetNanos > 0 ? (double) lastDrainNanos / drainBudgetNanos : 0;
+    }
+
+    /**
+     * @return Average fraction of the drain budget used by ticks that had queued work (0 when no budget is configured)
+     */
+    public double getAverageDrainBudgetUsage() {
+        long ticks = drainTicks.get();
+        if (drainBudgetNanos <= 0 || ticks == 0) return 0;
+        return (double) drainTotalNanos.get() / ticks / drainBudgetNanos;
+    }
+
+    /**
+     * @return How many ticks stopped draining because the time budget ran out
+     */
+    public long getDrainBudgetExhaustedCount() { return drainBudgetExhausted.get(); }
+
+    public QueueScheduling getQueueScheduling() { return queuedCommands.getScheduling(); }
+
+    /**
+     * @return How many commands the global queue, and each lane, can hold (Integer.MAX_VALUE when unbounded)
+     */
+    public int getQueueCapacity() { return queueCapacity; }
+
+    /**
+     * @return Commands and triggers refused because their queue (or the trigger wheel) was full
+     */
+    public long getRejectedCommandCount() { return commandsRejected.get(); }
+
+    /**
+     * @return Waiting commands and triggers taken out by DROP_OLDEST to make room for newer ones
+     */
+    public long getDroppedCommandCount() { return commandsDropped.get(); }
+
+    /**
+     * @return Commands and triggers run on the adding thread by CALLER_RUNS
+     */
+    public long getCallerRunsCount() { return commandsCallerRan.get(); }
+
+    /**
+     * @return Queued commands that ended after their deadline
+     */
+    public long getDeadlineMissCount() { return metrics.deadlinesMissed(); }
+
+    /**
+     * A keyed sequential queue. scheduled guarantees at most one pool thread steps it at a time
+     */
+    private static final class CommandLane {
+        private final CommandQueue queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicLong pendingDelta = new AtomicLong(0);
+        // producers adding to the lane right now, -1 once the tick retired it
+        private final AtomicInteger writers = new AtomicInteger(0);
+        // the pool thread draining the lane, null between drains
+        private volatile Thread consumer;
+
+        private CommandLane(int capacity) {
+            this.queue = new CommandQueue(QueueScheduling.FIFO, 0, capacity);
+        }
+
+        /**
+         * @return false if the lane was retired, the caller has to use a new one
+         */
+        private boolean enter() {
+            int current;
+            do {
+                current = writers.get();
+                if (current < 0) return false;
+            } while (!writers.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void exit() {
+            writers.decrementAndGet();
+        }
+
+        /**
+         * Closes an idle lane to producers, so it can leave the map without losing a command
+         *
+         * @return false if a producer is adding to it or it holds commands
+         */
+        private boolean retire() {
+            if (!writers.compareAndSet(0, -1)) return false;
+            // an add that finished before we closed it is already counted in the size
+            if (queue.isEmpty() && !scheduled.get()) return true;
+            writers.set(0);
+            return false;
+        }
+    }
 
     /**
      * Builder class for creating configured instances
@@ -254,6 +1260,21 @@ public class SteveCommandLib2 {
         private long tps = 20;
         private boolean debug = false;
         private File scriptFolder = null;
+        private long drainBudgetNanos = 0;
+        private int drainMaxCommands = 1;
+        private boolean virtualThreads = false;
+        private Duration pinningThreshold = Duration.ofMillis(20);
+        private OverrunPolicy overrunPolicy = OverrunPolicy.STRETCH;
+        private int parallelTriggerThreshold = 0;
+        private String jmxName = null;
+        private QueueScheduling queueScheduling = QueueScheduling.FIFO;
+        private long agingNanos = 0;
+        private int queueCapacity = Integer.MAX_VALUE;
+        private RejectionPolicy queuePolicy = RejectionPolicy.REJECT;
+        private long queueBlockNanos = -1;
+        private int triggerCapacity = Integer.MAX_VALUE;
+        private RejectionPolicy triggerPolicy = RejectionPolicy.REJECT;
+        private long triggerBlockNanos = -1;
 
         public Builder withThreads(int threads) {
             this.threads = threads;
@@ -275,8 +1296,161 @@ public class SteveCommandLib2 {
             return this;
         }
 
+        /**
+         * Lets a single tick execute several queued commands instead of only the head one.
+         * The tick keeps draining until a command needs more ticks to finish, maxCommands
+         * commands were stepped or the time budget is used up
+         *
+         * @param budget      Time budget per tick, 0 for no time limit
+         * @param unit        Unit of the budget
+         * @param maxCommands Maximum commands stepped per tick (and per lane step)
+         */
+        public Builder withQueueDrain(long budget, TimeUnit unit, int maxCommands) {
+            if (budget < 0 || maxCommands < 1) {
+                throw new IllegalArgumentException("Drain budget must be >= 0 and maxCommands >= 1");
+            }
+            this.drainBudgetNanos = unit.toNanos(budget);
+            this.drainMaxCommands = maxCommands;
+            return this;
+        }
+
+        /**
+         * Runs parallel commands (including InfoCommands) and lane steps on virtual threads
+         * instead of a fixed pool. Good for commands that spend most of their time blocked on I/O.
+         * The main tick keeps its own platform thread, and withThreads is ignored.
+         *
+         * Avoid blocking (I/O, sleep, locks) inside synchronized blocks in those commands: on Java 21
+         * that pins the virtual thread to its carrier. Use a ReentrantLock instead, and check
+         * getVirtualThreadPinnedCount() / getLastPinnedFrame() or run with -Djdk.tracePinnedThreads=short
+         * to find the offending code
+         */
+        public Builder withVirtualThreads() {
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * @param threshold Minimum pin duration that gets counted in the pinning metrics (default 20ms)
+         */
+        public Builder withPinningThreshold(Duration threshold) {
+            this.pinningThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * @param policy What to do when a tick takes longer than 1/TPS (default STRETCH)
+         */
+        public Builder withOverrunPolicy(OverrunPolicy policy) {
+            this.overrunPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Splits the due triggers of a tick across a ForkJoinPool when there are at least threshold of them.
+         * Below the threshold they are checked one by one on the tick thread, like before.
+         * Triggers annotated with @SingleThreaded (or that call setSingleThreaded(true)) always stay on the tick thread
+         *
+         * @param threshold Minimum due triggers in a tick to go parallel, 0 to disable
+         */
+        public Builder withParallelTriggers(int threshold) {
+            if (threshold < 0) {
+                throw new IllegalArgumentException("Parallel trigger threshold must be >= 0");
+            }
+            this.parallelTriggerThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Orders the global queue by priority or by deadline instead of arrival (default FIFO).
+         * A command that started still runs until it finishes, the scheduling only picks which one starts next
+         *
+         * @param scheduling How the next queued command is picked
+         * @param aging      With PRIORITY, waiting this long counts as one priority level.
+         *                   With DEADLINE, the implicit deadline of commands that don't have one.
+         *                   Duration.ZERO turns aging off, which lets a steady stream of urgent commands starve the rest
+         */
+        public Builder withQueueScheduling(QueueScheduling scheduling, Duration aging) {
+            if (scheduling == null || aging == null || aging.isNegative()) {
+                throw new IllegalArgumentException("Scheduling and aging cannot be null, and aging must be >= 0");
+            }
+            this.queueScheduling = scheduling;
+            this.agingNanos = aging.toNanos();
+            return this;
+        }
+
+        /**
+         * Bounds the global queue and every lane (each lane gets its own capacity). By default they are unbounded.
+         * When one is full, the policy decides what happens to a new command:
+         * REJECT refuses it, DROP_OLDEST drops the oldest command that didn't start yet,
+         * BLOCK waits for room and CALLER_RUNS runs it right away on the adding thread, skipping the queue.
+         * BLOCK and CALLER_RUNS on the tick thread refuse instead, since only the tick makes room and a command
+         * stepped there would stall it. BLOCK also refuses when a lane's command adds to its own lane, which only
+         * that same drain would empty. CALLER_RUNS refuses on lanes, where running next to the lane's head
+         * would break the one command at a time per key
+         *
+         * @param capacity Maximum commands waiting in a queue (the running head included)
+         * @param policy   What to do with commands that don't fit
+         */
+        public Builder withQueueCapacity(int capacity, RejectionPolicy policy) {
+            return withQueueCapacity(capacity, policy, null);
+        }
+
+        /**
+         * Same as withQueueCapacity(capacity, policy), with BLOCK giving up after blockTimeout
+         *
+         * @param blockTimeout How long BLOCK waits for room, null to wait as long as needed
+         */
+        public Builder withQueueCapacity(int capacity, RejectionPolicy policy, Duration blockTimeout) {
+            if (capacity < 1 || policy == null || (blockTimeout != null && blockTimeout.isNegative())) {
+                throw new IllegalArgumentException("Capacity must be >= 1, the policy cannot be null and the timeout must be >= 0");
+            }
+            this.queueCapacity = capacity;
+            this.queuePolicy = policy;
+            this.queueBlockNanos = blockTimeout != null ? blockTimeout.toNanos() : -1;
+            return this;
+        }
+
+        /**
+         * Bounds how many triggers can be registered at once. By default it's unbounded.
+         * Policies work like withQueueCapacity: DROP_OLDEST cancels the trigger registered first,
+         * CALLER_RUNS checks the trigger on the adding thread every timeBetweenChecks until it finishes
+         * (event-only triggers, and triggers added from the tick thread, are refused instead)
+         *
+         * @param capacity Maximum live triggers
+         * @param policy   What to do with triggers that don't fit
+         */
+        public Builder withTriggerCapacity(int capacity, RejectionPolicy policy) {
+            return withTriggerCapacity(capacity, policy, null);
+        }
+
+        /**
+         * Same as withTriggerCapacity(capacity, policy), with BLOCK giving up after blockTimeout
+         *
+         * @param blockTimeout How long BLOCK waits for room, null to wait as long as needed
+         */
+        public Builder withTriggerCapacity(int capacity, RejectionPolicy policy, Duration blockTimeout) {
+            if (capacity < 1 || policy == null || (blockTimeout != null && blockTimeout.isNegative())) {
+                throw new IllegalArgumentException("Capacity must be >= 1, the policy cannot be null and the timeout must be >= 0");
+            }
+            this.triggerCapacity = capacity;
+            this.triggerPolicy = policy;
+            this.triggerBlockNanos = blockTimeout != null ? blockTimeout.toNanos() : -1;
+            return this;
+        }
+
+        /**
+         * Registers the engine metrics in the platform MBean server as
+         * com.daviipkp.stevecommandlib2:type=Engine,name=&lt;name&gt;. It's unregistered on stop()
+         *
+         * @param name Name that identifies this engine in JMX
+         */
+        public Builder enableJmx(String name) {
+            this.jmxName = name;
+            return this;
+        }
+
         public SteveCommandLib2 build() {
-            return new SteveCommandLib2(threads, tps, debug, scriptFolder);
+            return new SteveCommandLib2(this);
         }
     }
 }
\ No newline at end of file
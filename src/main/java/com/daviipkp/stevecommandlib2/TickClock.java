@@ -0,0 +1,117 @@
+package com.daviipkp.stevecommandlib2;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-rate tick clock based on System.nanoTime.
+ * Tick deadlines are computed from the schedule (not from when the last tick ended), so the rate doesn't drift,
+ * and the wait parks until shortly before the deadline and spins the rest, so it stays precise above 1000 TPS.
+ * Only the tick thread drives it; the metrics can be read from anywhere.
+ */
+final class TickClock {
+
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long MAX_CATCH_UP_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long NANOS_PER_MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final OverrunPolicy policy;
+
+    private long nextTickNanos;
+    private long lastTickNanos;
+    // sub-millisecond leftover of the previous deltas, so the ms deltas add up to the real elapsed time
+    private long carryNanos;
+
+    private final AtomicLong ticks = new AtomicLong(0);
+    private final AtomicLong overruns = new AtomicLong(0);
+    private final AtomicLong skippedTicks = new AtomicLong(0);
+    private final AtomicLong totalJitterNanos = new AtomicLong(0);
+    private volatile long lastJitterNanos = 0;
+    private volatile long maxJitterNanos = 0;
+
+    TickClock(OverrunPolicy policy) {
+        this.policy = policy;
+    }
+
+    void reset() {
+        long now = System.nanoTime();
+        nextTickNanos = now;
+        lastTickNanos = now;
+        carryNanos = 0;
+    }
+
+    /**
+     * Waits until the next tick is due
+     *
+     * @return Milliseconds since the previous tick started
+     */
+    long awaitTick() throws InterruptedException {
+        long remaining;
+        while ((remaining = nextTickNanos - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        long now = System.nanoTime();
+        long jitter = now - nextTickNanos;
+        lastJitterNanos = jitter;
+        totalJitterNanos.addAndGet(jitter);
+        if (jitter > maxJitterNanos) {
+            maxJitterNanos = jitter;
+        }
+        ticks.incrementAndGet();
+
+        long elapsed = now - lastTickNanos + carryNanos;
+        lastTickNanos = now;
+        carryNanos = elapsed % NANOS_PER_MS;
+        return elapsed / NANOS_PER_MS;
+    }
+
+    /**
+     * Moves the deadline one period forward and applies the overrun policy if the tick ran late
+     *
+     * @param periodNanos Current tick period
+     */
+    void advance(long periodNanos) {
+        nextTickNanos += periodNanos;
+
+        long now = System.nanoTime();
+        if (now <= nextTickNanos) return;
+
+        overruns.incrementAndGet();
+        long behind = now - nextTickNanos;
+        switch (policy) {
+            case CATCH_UP -> {
+                if (behind > MAX_CATCH_UP_NANOS) {
+                    skippedTicks.addAndGet(behind / periodNanos);
+                    nextTickNanos = now;
+                }
+            }
+            case SKIP -> {
+                long missed = behind / periodNanos + 1;
+                skippedTicks.addAndGet(missed);
+                nextTickNanos += missed * periodNanos;
+            }
+            case STRETCH -> nextTickNanos = now;
+        }
+    }
+
+    OverrunPolicy getPolicy() { return policy; }
+    long getTickCount() { return ticks.get(); }
+    long getOverrunCount() { return overruns.get(); }
+    long getSkippedTickCount() { return skippedTicks.get(); }
+    long getLastJitterNanos() { return lastJitterNanos; }
+    long getMaxJitterNanos() { return maxJitterNanos; }
+
+    long getAverageJitterNanos() {
+        long count = ticks.get();
+        return count == 0 ? 0 : totalJitterNanos.get() / count;
+    }
+}
@@ -0,0 +1,355 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.TriggeredCommand;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed timing wheel that schedules trigger checks by their timeBetweenChecks.
+ * Each slot covers one millisecond of engine time and holds a doubly linked list of handles,
+ * so advancing the wheel only visits the slots that passed and the triggers inside them.
+ * Intervals longer than one revolution stay in their slot and are skipped until their deadline.
+ *
+ * Registration and cancellation are lock-free from any thread: they go through inbox queues
+ * that the tick thread applies before advancing. Everything else runs on the tick thread.
+ *
+ * Triggers that don't poll (event-driven only) are parked: registered, but not linked in any slot.
+ *
+ * The wheel can have a capacity: tryReserve refuses once that many triggers are live (cancelled ones free
+ * their slot right away, not on the next tick), and dropOldest cancels the oldest live one to make room.
+ */
+final class TimingWheel {
+
+    private static final int WHEEL_SIZE = 4096;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private final TriggerHandle[] slots = new TriggerHandle[WHEEL_SIZE];
+    private final Queue<TriggerHandle> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<TriggerHandle> pendingCancels = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final Set<TriggerHandle> parked = new HashSet<>();
+
+    // engine time in ms, advanced by the tick delta
+    private long now = 0;
+
+    private final int capacity;
+    // live handles from oldest to newest, only kept for dropOldest
+    private final boolean trackAge;
+    private final Object ageLock = new Object();
+    private TriggerHandle oldest;
+    private TriggerHandle newest;
+    private final AtomicInteger blocked = new AtomicInteger(0);
+    private final ReentrantLock spaceLock = new ReentrantLock();
+    private final Condition spaceFreed = spaceLock.newCondition();
+
+    TimingWheel() {
+        this(Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * @param capacity Live triggers allowed by tryReserve
+     * @param trackAge Keeps the registration order, needed by dropOldest
+     */
+    TimingWheel(int capacity, boolean trackAge) {
+        this.capacity = capacity;
+        this.trackAge = trackAge;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Registers a trigger whatever the capacity
+     */
+    TriggerHandle register(TriggeredCommand command) {
+        size.incrementAndGet();
+        return registerReserved(command);
+    }
+
+    /**
+     * Takes a slot for a trigger that will be registered with registerReserved
+     *
+     * @return false if the wheel is full
+     */
+    boolean tryReserve() {
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) return false;
+        } while (!size.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    TriggerHandle registerReserved(TriggeredCommand command) {
+        TriggerHandle handle = new TriggerHandle(command, this);
+        if (trackAge) {
+            synchronized (ageLock) {
+                handle.older = newest;
+                if (newest != null) newest.newer = handle;
+                else oldest = handle;
+                newest = handle;
+            }
+        }
+        pendingAdds.offer(handle);
+        return handle;
+    }
+
+    /**
+     * Waits until the wheel is under its capacity. The room isn't reserved, so tryReserve can still fail afterwards
+     *
+     * @param timeoutNanos How long to wait at most, negative to wait as long as needed
+     * @return false if the time ran out or the thread was interrupted (the interrupt flag is kept)
+     */
+    boolean awaitSpace(long timeoutNanos) {
+        if (size.get() < capacity) return true;
+        long deadline = System.nanoTime() + timeoutNanos;
+        blocked.incrementAndGet();
+        spaceLock.lock();
+        try {
+            while (size.get() >= capacity) {
+                if (timeoutNanos < 0) {
+                    spaceFreed.await();
+                } else {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) return false;
+                    spaceFreed.awaitNanos(left);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            spaceLock.unlock();
+            blocked.decrementAndGet();
+        }
+    }
+
+    /**
+     * Cancels the oldest live trigger. Only works on wheels built with trackAge
+     *
+     * @return The cancelled trigger, or null if there was none (or another thread cancelled it first)
+     */
+    TriggerHandle dropOldest() {
+        TriggerHandle victim;
+        synchronized (ageLock) {
+            victim = oldest;
+        }
+        return victim != null && victim.cancel() ? victim : null;
+    }
+
+    void cancel(TriggerHandle handle) {
+        release(handle);
+        pendingCancels.offer(handle);
+    }
+
+    /**
+     * Stops counting a handle against the capacity, once
+     */
+    private void release(TriggerHandle handle) {
+        if (!handle.markReleased()) return;
+        if (trackAge) {
+            synchronized (ageLock) {
+                if (handle.older != null) handle.older.newer = handle.newer;
+                else if (oldest == handle) oldest = handle.newer;
+                if (handle.newer != null) handle.newer.older = handle.older;
+                else if (newest == handle) newest = handle.older;
+                handle.older = null;
+                handle.newer = null;
+            }
+        }
+        size.decrementAndGet();
+        if (blocked.get() > 0) {
+            spaceLock.lock();
+            try {
+                spaceFreed.signalAll();
+            } finally {
+                spaceLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves the wheel forward and collects every trigger whose check is due.
+     * Due handles are unlinked; the caller must reschedule() or complete() each of them
+     *
+     * @param delta Elapsed ms since the last advance
+     * @param due   Output list for the due handles
+     */
+    synchronized void advance(long delta, List<TriggerHandle> due) {
+        applyPending();
+        if (delta <= 0) return;
+
+        long target = now + delta;
+        if (size.get() == 0) {
+            now = target;
+            return;
+        }
+        long steps = Math.min(delta, WHEEL_SIZE);
+        for (long i = 1; i <= steps; i++) {
+            expireSlot((int) ((now + i) & MASK), target, due);
+        }
+        now = target;
+    }
+
+    /**
+     * Puts a handle back in the wheel, timeBetweenChecks after the current time
+     */
+    synchronized void reschedule(TriggerHandle handle) {
+        if (handle.isCancelled()) {
+            drop(handle);
+            return;
+        }
+        schedule(handle);
+    }
+
+    /**
+     * Takes a scheduled or parked handle out of the wheel so it can be checked right away.
+     * The caller must reschedule() or complete() it afterwards
+     *
+     * @return false if the handle is not in the wheel (done, cancelled, or already due this tick)
+     */
+    synchronized boolean detach(TriggerHandle handle) {
+        if (handle.isCancelled() || handle.isDone()) {
+            return false;
+        }
+        if (handle.slot >= 0) {
+            unlink(handle);
+            return true;
+        }
+        if (handle.parked) {
+            handle.parked = false;
+            parked.remove(handle);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a handle that finished (or failed) for good
+     */
+    synchronized void complete(TriggerHandle handle) {
+        drop(handle);
+    }
+
+    /**
+     * @return ms since the handle was last scheduled
+     */
+    long elapsedSince(TriggerHandle handle) {
+        return now - handle.lastCheck;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            TriggerHandle h = slots[i];
+            slots[i] = null;
+            while (h != null) {
+                TriggerHandle next = h.next;
+                h.prev = null;
+                h.next = null;
+                h.slot = -1;
+                drop(h);
+                h = next;
+            }
+        }
+        for (TriggerHandle p : parked) {
+            p.parked = false;
+            drop(p);
+        }
+        parked.clear();
+        TriggerHandle h;
+        while ((h = pendingAdds.poll()) != null) {
+            drop(h);
+        }
+        pendingCancels.clear();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Places the triggers registered (and takes out the ones cancelled) since the last call. advance() does it first thing
+     */
+    synchronized void applyPending() {
+        TriggerHandle h;
+        while ((h = pendingAdds.poll()) != null) {
+            if (h.isCancelled()) {
+                drop(h);
+            } else {
+                schedule(h);
+            }
+        }
+        while ((h = pendingCancels.poll()) != null) {
+            if (h.slot >= 0) {
+                unlink(h);
+                drop(h);
+            } else if (h.parked) {
+                h.parked = false;
+                parked.remove(h);
+                drop(h);
+            }
+        }
+    }
+
+    private void expireSlot(int index, long target, List<TriggerHandle> due) {
+        TriggerHandle h = slots[index];
+        while (h != null) {
+            TriggerHandle next = h.next;
+            if (h.isCancelled()) {
+                unlink(h);
+                drop(h);
+            } else if (h.deadline <= target) {
+                unlink(h);
+                due.add(h);
+            }
+            h = next;
+        }
+    }
+
+    private void schedule(TriggerHandle h) {
+        h.lastCheck = now;
+        if (!h.getCommand().isPolling()) {
+            h.parked = true;
+            parked.add(h);
+            return;
+        }
+        h.deadline = now + Math.max(1, h.getCommand().getTimeBetweenChecks());
+        int index = (int) (h.deadline & MASK);
+
+        h.slot = index;
+        h.prev = null;
+        h.next = slots[index];
+        if (h.next != null) {
+            h.next.prev = h;
+        }
+        slots[index] = h;
+    }
+
+    private void unlink(TriggerHandle h) {
+        if (h.prev != null) {
+            h.prev.next = h.next;
+        } else {
+            slots[h.slot] = h.next;
+        }
+        if (h.next != null) {
+            h.next.prev = h.prev;
+        }
+        h.prev = null;
+        h.next = null;
+        h.slot = -1;
+    }
+
+    private void drop(TriggerHandle h) {
+        h.markDone();
+        release(h);
+    }
+}
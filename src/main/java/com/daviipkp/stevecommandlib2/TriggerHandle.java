@@ -0,0 +1,81 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.TriggeredCommand;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Registration of a TriggeredCommand inside the engine.
+ * Cancelling through the handle is O(1) and can be done from any thread
+ */
+public final class TriggerHandle {
+
+    private static final VarHandle RELEASED;
+
+    static {
+        try {
+            RELEASED = MethodHandles.lookup().findVarHandle(TriggerHandle.class, "released", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final TriggeredCommand command;
+    private final TimingWheel wheel;
+    private volatile boolean cancelled = false;
+    private volatile boolean done = false;
+    // set once the handle stopped counting against the wheel capacity
+    @SuppressWarnings("unused")
+    private volatile boolean released = false;
+
+    // Wheel bookkeeping, only touched by the tick thread
+    long deadline;
+    long lastCheck;
+    int slot = -1;
+    boolean parked = false;
+    // result of the last check when it ran on another thread
+    Exception failure;
+    TriggerHandle prev;
+    TriggerHandle next;
+    // registration order, only kept when the wheel has to find its oldest trigger
+    TriggerHandle older;
+    TriggerHandle newer;
+
+    TriggerHandle(TriggeredCommand command, TimingWheel wheel) {
+        this.command = command;
+        this.wheel = wheel;
+    }
+
+    /**
+     * Stops the trigger from being checked again.
+     * The command is removed from the engine on the next tick
+     *
+     * @return false if the trigger was already cancelled or done
+     */
+    public boolean cancel() {
+        if (cancelled || done) {
+            return false;
+        }
+        cancelled = true;
+        wheel.cancel(this);
+        return true;
+    }
+
+    public boolean isCancelled() { return cancelled; }
+
+    /**
+     * @return true once the trigger left the engine (finished, failed, cancelled or flushed)
+     */
+    public boolean isDone() { return done; }
+
+    public TriggeredCommand getCommand() { return command; }
+
+    void markDone() {
+        done = true;
+    }
+
+    boolean markReleased() {
+        return RELEASED.compareAndSet(this, false, true);
+    }
+}
@@ -0,0 +1,17 @@
+package com.daviipkp.stevecommandlib2.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a TriggeredCommand that must always be checked on the engine tick thread,
+ * even when parallel trigger evaluation is enabled
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface SingleThreaded {
+}
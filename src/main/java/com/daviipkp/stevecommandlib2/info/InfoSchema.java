@@ -0,0 +1,92 @@
+package com.daviipkp.stevecommandlib2.info;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed key set of an InfoStack, with every key mapped to a slot index once.
+ * Build one schema per shape and create the stacks from it, so no stack has to hash its keys again:
+ *
+ * <pre>
+ * static final InfoSchema PLAYER = InfoSchema.of("name", "hp", "mana");
+ * static final int HP = PLAYER.slot("hp");
+ *
+ * InfoStack stack = PLAYER.newStack();
+ * stack.fulfill(HP, 20);
+ * </pre>
+ *
+ * Schemas are immutable and thread safe.
+ */
+public final class InfoSchema {
+
+    private final String[] keys;
+    // keys already encoded for the JSON generator
+    private final SerializedString[] names;
+    private final Map<String, Integer> slots;
+
+    private InfoSchema(String[] keys) {
+        this.keys = keys;
+        this.names = new SerializedString[keys.length];
+        this.slots = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            names[i] = new SerializedString(keys[i]);
+            slots.put(keys[i], i);
+        }
+    }
+
+    /**
+     * @param keys The keys of the stack, in the order they are written. Repeated keys are kept once
+     * @throws IllegalArgumentException if a key is null
+     */
+    public static InfoSchema of(String... keys) {
+        LinkedHashSet<String> unique = new LinkedHashSet<>();
+        for (String key : keys) {
+            if (key == null) {
+                throw new IllegalArgumentException("InfoStack keys cannot be null");
+            }
+            unique.add(key);
+        }
+        return new InfoSchema(unique.toArray(new String[0]));
+    }
+
+    /**
+     * @return A new stack with every slot empty
+     */
+    public InfoStack newStack() {
+        return new InfoStack(this);
+    }
+
+    /**
+     * @return The slot of the key, or -1 if the schema doesn't have it
+     */
+    public int slot(String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return The key stored in the slot
+     * @throws IndexOutOfBoundsException if the slot is not in the schema
+     */
+    public String key(int slot) {
+        return keys[slot];
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    SerializedString name(int slot) {
+        return names[slot];
+    }
+}
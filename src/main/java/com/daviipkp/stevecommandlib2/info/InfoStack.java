@@ -1,27 +1,85 @@
 package com.daviipkp.stevecommandlib2.info;
 
+import com.daviipkp.stevecommandlib2.CommandCodec;
 import com.daviipkp.stevecommandlib2.Jsoning;
+import com.daviipkp.stevecommandlib2.SteveCommandLib2;
 import com.daviipkp.stevecommandlib2.instance.InfoCommand;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.io.Serial;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+/**
+ * A fixed set of keys, each holding a long, double, boolean or any other object.
+ * Values live in arrays indexed by the slots of an InfoSchema, so filling a slot by index never hashes,
+ * and the stack is written straight to the JSON (or binary) generator without building a Map.
+ * Different slots can be filled from different threads at the same time, and a slot filled once reads
+ * correctly from any thread. Filling a slot again while another thread reads it is not atomic:
+ * the reader can see the kind of one write with the value of another.
+ */
+@JsonSerialize(using = InfoStack.Serializer.class)
+@JsonDeserialize(using = InfoStack.Deserializer.class)
 public class InfoStack {
 
-    private final Map<String, String> data;
+    private static final byte EMPTY = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte OBJECT = 4;
+
+    // the value is written first and the kind last with release semantics, so a reader that sees the kind sees the value
+    private static final VarHandle KINDS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final InfoSchema schema;
+    private final byte[] kinds;
+    // longs, doubles (as raw bits) and booleans (0 or 1)
+    private final long[] primitives;
+    private final Object[] objects;
 
     /**
      * Creates a new InfoStack with a restricted set of allowed keys
-     * Initial values for these keys are null
+     * Initial values for these keys are null.
+     * Builds a new schema every time; for stacks created often, keep an InfoSchema and use newStack()
      *
      * @param allowedKeys A list of keys that this stack will support
      */
     public InfoStack(String... allowedKeys) {
-        this.data = new LinkedHashMap<>();
-        for (String key : allowedKeys) {
-            this.data.put(key, null);
+        this(InfoSchema.of(allowedKeys));
+    }
+
+    /**
+     * Creates a new InfoStack with the keys of a schema, all empty
+     */
+    public InfoStack(InfoSchema schema) {
+        if (schema == null) {
+            throw new IllegalArgumentException("Schema cannot be null");
         }
+        this.schema = schema;
+        this.kinds = new byte[schema.size()];
+        this.primitives = new long[schema.size()];
+        this.objects = new Object[schema.size()];
+    }
+
+    public InfoSchema getSchema() {
+        return schema;
     }
 
     /**
@@ -30,31 +88,54 @@ public class InfoStack {
      * @return A formatted JSON string representing the keys and values
      */
     public String getJsonObject() {
-        return Jsoning.stringify(data);
+        return Jsoning.stringify(this);
     }
 
     /**
      * Populates this InfoStack from a JSON string
      * Only keys present in the JSON that match the allowed keys of this stack
-     * will be updated
+     * will be updated. Values keep their JSON type: 5 is stored as a long and true as a boolean,
+     * only JSON strings are stored as strings (before InfoSchema every value was read as a string)
      *
      * @param json The JSON string to parse
      * @return The current instance (for chaining)
      */
     public InfoStack fromJson(String json) {
         try {
-            Map<String, String> parsed = Jsoning.parse(json, new TypeReference<Map<String, String>>() {});
-            for (Map.Entry<String, String> entry : parsed.entrySet()) {
-                if (this.data.containsKey(entry.getKey())) {
-                    this.data.put(entry.getKey(), entry.getValue());
-                }
-            }
+            Jsoning.parseInto(json, this);
         } catch (Exception e) {
             System.err.println("Failed to parse JSON into InfoStack: " + e.getMessage());
         }
         return this;
     }
 
+    /**
+     * Serializes the current stack data into the binary format of a CommandCodec
+     *
+     * @param codec The codec whose type table numbers the keys
+     * @return The encoded keys and values
+     */
+    public byte[] getBinaryObject(CommandCodec codec) {
+        return codec.toBinary(this);
+    }
+
+    /**
+     * Populates this InfoStack from bytes written by getBinaryObject
+     * Only keys that match the allowed keys of this stack will be updated
+     *
+     * @param codec The codec the bytes were written with
+     * @param bytes The encoded stack
+     * @return The current instance (for chaining)
+     */
+    public InfoStack fromBinary(CommandCodec codec, byte[] bytes) {
+        try {
+            codec.parseInto(bytes, this);
+        } catch (Exception e) {
+            System.err.println("Failed to parse binary into InfoStack: " + e.getMessage());
+        }
+        return this;
+    }
+
     /**
      * Updates the value of a specific key using the return value of an InfoCommand
      *
@@ -74,10 +155,126 @@ public class InfoStack {
      * @throws IllegalArgumentException If the key was not defined in the constructor
      */
     public void fulfillKey(String key, String value) {
-        if (!data.containsKey(key)) {
-            throw new IllegalArgumentException("Key '" + key + "' was not found. Check if you added it in the InfoStack constructor.");
+        fulfill(slotOf(key), value);
+    }
+
+    /**
+     * Same as fulfillKey(String, String), for a number
+     */
+    public void fulfillKey(String key, long value) {
+        fulfill(slotOf(key), value);
+    }
+
+    /**
+     * Same as fulfillKey(String, String), for a number
+     */
+    public void fulfillKey(String key, double value) {
+        fulfill(slotOf(key), value);
+    }
+
+    /**
+     * Same as fulfillKey(String, String), for a boolean
+     */
+    public void fulfillKey(String key, boolean value) {
+        fulfill(slotOf(key), value);
+    }
+
+    /**
+     * Same as fulfillKey(String, String), for any value Jsoning can serialize
+     */
+    public void fulfillKey(String key, Object value) {
+        fulfill(slotOf(key), value);
+    }
+
+    /**
+     * Runs every provider at the same time on the engine's pool and fills each key as soon as its provider finishes.
+     * Keys whose provider throws, returns null or an empty string, or is still running at the deadline
+     * get the default value, like fulfillEmpty. Providers still running at the deadline are stopped
+     *
+     * @param engine       The engine whose pool runs the providers (it has to be started)
+     * @param providers    The InfoCommand filling each key
+     * @param timeout      How long the providers have, from now
+     * @param defaultValue The value for keys that could not be filled
+     * @return Completes with this stack once every key is filled, at the latest when the timeout runs out
+     * @throws IllegalArgumentException If a key was not defined in the constructor
+     */
+    public CompletableFuture<InfoStack> gather(SteveCommandLib2 engine, Map<String, ? extends InfoCommand> providers, Duration timeout, String defaultValue) {
+        if (engine == null || providers == null) {
+            throw new IllegalArgumentException("Engine and providers cannot be null");
+        }
+        if (timeout == null || timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout must be zero or positive");
+        }
+
+        int[] slots = new int[providers.size()];
+        InfoCommand[] commands = new InfoCommand[providers.size()];
+        int count = 0;
+        for (Map.Entry<String, ? extends InfoCommand> entry : providers.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("Provider for key '" + entry.getKey() + "' cannot be null");
+            }
+            slots[count] = slotOf(entry.getKey());
+            commands[count++] = entry.getValue();
+        }
+
+        Gather gather = new Gather(this, slots, commands, defaultValue);
+        if (count == 0) {
+            gather.result.complete(this);
+            return gather.result;
+        }
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            engine.addParallelCommand(commands[i]).whenComplete((command, error) -> gather.fill(index, error));
+        }
+        if (!gather.result.isDone()) {
+            try {
+                ScheduledFuture<?> deadline = engine.schedule(gather::expire, timeout);
+                // once every provider finished, the deadline task stops holding the gather
+                gather.result.whenComplete((stack, error) -> deadline.cancel(false));
+            } catch (RejectedExecutionException e) {
+                // engine is shutting down, nothing would run the deadline
+                gather.expire();
+            }
+        }
+        return gather.result;
+    }
+
+    /**
+     * Updates the value of a slot of the schema
+     *
+     * @throws IndexOutOfBoundsException if the slot is not in the schema
+     */
+    public void fulfill(int slot, long value) {
+        primitives[slot] = value;
+        KINDS.setRelease(kinds, slot, LONG);
+    }
+
+    public void fulfill(int slot, double value) {
+        primitives[slot] = Double.doubleToRawLongBits(value);
+        KINDS.setRelease(kinds, slot, DOUBLE);
+    }
+
+    public void fulfill(int slot, boolean value) {
+        primitives[slot] = value ? 1 : 0;
+        KINDS.setRelease(kinds, slot, BOOLEAN);
+    }
+
+    /**
+     * Updates the value of a slot of the schema. Boxed numbers and booleans are stored as primitives, null empties the slot
+     *
+     * @throws IndexOutOfBoundsException if the slot is not in the schema
+     */
+    public void fulfill(int slot, Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            fulfill(slot, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            fulfill(slot, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean b) {
+            fulfill(slot, b.booleanValue());
+        } else {
+            objects[slot] = value;
+            KINDS.setRelease(kinds, slot, value == null ? EMPTY : OBJECT);
         }
-        data.put(key, value);
     }
 
     /**
@@ -87,10 +284,213 @@ public class InfoStack {
      * @param defaultValue The value to use for missing entries
      */
     public void fulfillEmpty(String defaultValue) {
-        for (Map.Entry<String, String> entry : data.entrySet()) {
-            if (entry.getValue() == null || entry.getValue().isEmpty()) {
-                entry.setValue(defaultValue);
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (isEmpty(slot)) {
+                fulfill(slot, defaultValue);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the slot has no value, or holds an empty string
+     */
+    public boolean isEmpty(int slot) {
+        byte kind = kind(slot);
+        return kind == EMPTY || (kind == OBJECT && objects[slot] instanceof String s && s.isEmpty());
+    }
+
+    /**
+     * @return The value of the key (boxed for primitives), or null if it is empty
+     * @throws IllegalArgumentException If the key was not defined in the constructor
+     */
+    public Object get(String key) {
+        return get(slotOf(key));
+    }
+
+    /**
+     * @return The value of the slot (boxed for primitives), or null if it is empty
+     */
+    public Object get(int slot) {
+        return switch (kind(slot)) {
+            case LONG -> primitives[slot];
+            case DOUBLE -> Double.longBitsToDouble(primitives[slot]);
+            case BOOLEAN -> primitives[slot] != 0;
+            case OBJECT -> objects[slot];
+            default -> null;
+        };
+    }
+
+    /**
+     * @throws IllegalStateException if the slot doesn't hold a long
+     */
+    public long getLong(int slot) {
+        if (kind(slot) != LONG) {
+            throw new IllegalStateException("Key '" + schema.key(slot) + "' does not hold a long");
+        }
+        return primitives[slot];
+    }
+
+    /**
+     * @throws IllegalStateException if the slot doesn't hold a double or a long
+     */
+    public double getDouble(int slot) {
+        byte kind = kind(slot);
+        if (kind == LONG) return primitives[slot];
+        if (kind != DOUBLE) {
+            throw new IllegalStateException("Key '" + schema.key(slot) + "' does not hold a number");
+        }
+        return Double.longBitsToDouble(primitives[slot]);
+    }
+
+    /**
+     * @throws IllegalStateException if the slot doesn't hold a boolean
+     */
+    public boolean getBoolean(int slot) {
+        if (kind(slot) != BOOLEAN) {
+            throw new IllegalStateException("Key '" + schema.key(slot) + "' does not hold a boolean");
+        }
+        return primitives[slot] != 0;
+    }
+
+    private byte kind(int slot) {
+        return (byte) KINDS.getAcquire(kinds, slot);
+    }
+
+    private int slotOf(String key) {
+        int slot = schema.slot(key);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Key '" + key + "' was not found. Check if you added it in the InfoStack constructor.");
+        }
+        return slot;
+    }
+
+    private void write(JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(this, kinds.length);
+        for (int slot = 0; slot < kinds.length; slot++) {
+            gen.writeFieldName(schema.name(slot));
+            switch (kind(slot)) {
+                case LONG -> gen.writeNumber(primitives[slot]);
+                case DOUBLE -> gen.writeNumber(Double.longBitsToDouble(primitives[slot]));
+                case BOOLEAN -> gen.writeBoolean(primitives[slot] != 0);
+                case OBJECT -> {
+                    Object value = objects[slot];
+                    if (value instanceof String s) gen.writeString(s);
+                    else provider.defaultSerializeValue(value, gen);
+                }
+                default -> gen.writeNull();
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    private void read(JsonParser p, DeserializationContext ctxt) throws IOException {
+        String name = p.currentToken() == JsonToken.FIELD_NAME ? p.currentName() : p.nextFieldName();
+        for (; name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            int slot = schema.slot(name);
+            if (slot < 0) {
+                p.skipChildren();
+                continue;
+            }
+            switch (token) {
+                case VALUE_NUMBER_INT -> {
+                    if (p.getNumberType() == JsonParser.NumberType.BIG_INTEGER) fulfill(slot, (Object) p.getBigIntegerValue());
+                    else fulfill(slot, p.getLongValue());
+                }
+                case VALUE_NUMBER_FLOAT -> fulfill(slot, p.getDoubleValue());
+                case VALUE_TRUE -> fulfill(slot, true);
+                case VALUE_FALSE -> fulfill(slot, false);
+                case VALUE_STRING -> fulfill(slot, p.getText());
+                case VALUE_NULL -> fulfill(slot, (Object) null);
+                default -> fulfill(slot, ctxt.readValue(p, Object.class));
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * One gather call. Every key is claimed exactly once, by its provider or by the deadline,
+     * and the last claim completes the result
+     */
+    private static final class Gather {
+        final InfoStack stack;
+        final int[] slots;
+        final InfoCommand[] commands;
+        final String defaultValue;
+        final AtomicIntegerArray claimed;
+        final AtomicInteger remaining;
+        final CompletableFuture<InfoStack> result = new CompletableFuture<>();
+
+        Gather(InfoStack stack, int[] slots, InfoCommand[] commands, String defaultValue) {
+            this.stack = stack;
+            this.slots = slots;
+            this.commands = commands;
+            this.defaultValue = defaultValue;
+            this.claimed = new AtomicIntegerArray(slots.length);
+            this.remaining = new AtomicInteger(slots.length);
+        }
+
+        void fill(int index, Throwable error) {
+            if (!claimed.compareAndSet(index, 0, 1)) return;
+
+            String value = null;
+            if (error == null) {
+                try {
+                    value = commands[index].getReturn();
+                } catch (RuntimeException e) {
+                    SteveCommandLib2.systemPrint(() -> "InfoCommand for key '" + stack.schema.key(slots[index]) + "' failed to return: " + e.getMessage());
+                }
+            }
+            stack.fulfill(slots[index], value == null || value.isEmpty() ? defaultValue : value);
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(stack);
+            }
+        }
+
+        void expire() {
+            for (int i = 0; i < slots.length; i++) {
+                if (claimed.get(i) == 0) {
+                    commands[i].stop();
+                    fill(i, new TimeoutException());
+                }
+            }
+        }
+    }
+
+    static final class Serializer extends StdSerializer<InfoStack> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(InfoStack.class);
+        }
+
+        @Override
+        public void serialize(InfoStack value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            value.write(gen, provider);
+        }
+    }
+
+    // a stack can't be created from JSON alone (the keys come from its schema), only filled in
+    static final class Deserializer extends StdDeserializer<InfoStack> {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() {
+            super(InfoStack.class);
+        }
+
+        @Override
+        public InfoStack deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return (InfoStack) ctxt.handleMissingInstantiator(InfoStack.class, null, p,
+                    "an InfoStack needs its keys, read into an existing stack with fromJson");
+        }
+
+        @Override
+        public InfoStack deserialize(JsonParser p, DeserializationContext ctxt, InfoStack intoValue) throws IOException {
+            intoValue.read(p, ctxt);
+            return intoValue;
+        }
+    }
+}
@@ -15,7 +15,9 @@ public abstract class Command {
     public void finish() {
         this.finished = true;
         this.running = false;
-        SteveCommandLib2.systemPrint("Finished " + this.getClass().getSimpleName());
+        if (SteveCommandLib2.isDebugMode()) {
+            SteveCommandLib2.systemPrint("Finished " + this.getClass().getSimpleName());
+        }
     }
 
     public abstract void handleError(Exception e);
@@ -33,15 +35,30 @@ public abstract class Command {
         if(!finished) {
             running = true;
         }else{
-            SteveCommandLib2.systemPrint("Tried to start " + getID() + " but it's already finished.");
+            if (SteveCommandLib2.isDebugMode()) {
+                SteveCommandLib2.systemPrint("Tried to start " + getID() + " but it's already finished.");
+            }
             return;
         }
-        SteveCommandLib2.systemPrint("Started " + getID());
+        if (SteveCommandLib2.isDebugMode()) {
+            SteveCommandLib2.systemPrint("Started " + getID());
+        }
     }
 
     public void stop() {
         running = false;
-        SteveCommandLib2.systemPrint("Stopped " + getID());
+        if (SteveCommandLib2.isDebugMode()) {
+            SteveCommandLib2.systemPrint("Stopped " + getID());
+        }
+    }
+
+    /**
+     * Puts the command back in its initial state, so the same instance can be added again.
+     * Subclasses that keep per-run state should override it and call super.reset()
+     */
+    public void reset() {
+        finished = false;
+        running = false;
     }
 
 
@@ -0,0 +1,396 @@
+package com.daviipkp.stevecommandlib2.instance;
+
+import com.daviipkp.stevecommandlib2.SteveCommandLib2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A composite command whose children declare what they depend on.
+ * Added to an engine, every child runs on the engine pool as soon as all its dependencies finished,
+ * so independent branches run at the same time. When a child fails, only the children that depend on it
+ * (directly or not) are cancelled; the other branches carry on.
+ *
+ * <pre>
+ * CommandGraph graph = new CommandGraph();
+ * CommandGraph.Node load = graph.add(new LoadChunk());
+ * CommandGraph.Node mobs = graph.add(new SpawnMobs(), load);
+ * CommandGraph.Node items = graph.add(new SpawnItems(), load);
+ * graph.add(new Announce(), mobs, items);
+ * engine.addCommand(graph);
+ * </pre>
+ *
+ * Dependencies can only point to nodes added before, so a graph can't have cycles.
+ * A graph runs once; after it ends, the nodes keep their timings and the critical path can be read.
+ */
+public class CommandGraph extends ParallelCommand {
+
+    public enum NodeState {
+        WAITING,
+        RUNNING,
+        FINISHED,
+        FAILED,
+        // a dependency failed, so it never started, or the graph was stopped before it finished
+        CANCELLED
+    }
+
+    public final class Node {
+        private final Command command;
+        private final List<Node> dependencies;
+        private final List<Node> dependents = new ArrayList<>();
+        private final AtomicInteger pendingDependencies;
+        private final AtomicReference<NodeState> state = new AtomicReference<>(NodeState.WAITING);
+        private volatile long startNanos = -1;
+        private volatile long endNanos = -1;
+        private volatile Throwable error;
+        // what the engine steps for this node: the command itself, or the Step wrapping it
+        private volatile ParallelCommand launched;
+
+        private Node(Command command, List<Node> dependencies) {
+            this.command = command;
+            this.dependencies = dependencies;
+            this.pendingDependencies = new AtomicInteger(dependencies.size());
+        }
+
+        public Command getCommand() { return command; }
+        public List<Node> getDependencies() { return Collections.unmodifiableList(dependencies); }
+        public NodeState getState() { return state.get(); }
+
+        /**
+         * @return What the command threw, if the node failed
+         */
+        public Throwable getError() { return error; }
+
+        /**
+         * @return When the node started, in ns after the graph started (-1 if it never did)
+         */
+        public long getStartNanos() {
+            return startNanos < 0 ? -1 : startNanos - graphStartNanos;
+        }
+
+        /**
+         * @return How long the node ran, in ns (-1 if it never started or is still running)
+         */
+        public long getDurationNanos() {
+            return startNanos < 0 || endNanos < 0 ? -1 : endNanos - startNanos;
+        }
+
+        private CommandGraph owner() {
+            return CommandGraph.this;
+        }
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final CompletableFuture<CommandGraph> completion = new CompletableFuture<>();
+    private final AtomicInteger unsettled = new AtomicInteger();
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    private volatile boolean begun = false;
+    private volatile boolean stopped = false;
+    private volatile long graphStartNanos = -1;
+    private volatile long graphEndNanos = -1;
+    private Consumer<Node> launcher;
+
+    // nodes stepped by execute(), when the graph is stepped by something other than the engine
+    private final List<Node> inline = new ArrayList<>();
+
+    public CommandGraph() {
+    }
+
+    // for CommandStack: each command depends on the one before. Built here, where add is known to be final
+    CommandGraph(Command[] chain) {
+        Node previous = null;
+        for (Command command : chain) {
+            previous = previous == null ? add(command) : add(command, previous);
+        }
+    }
+
+    /**
+     * Adds a child command
+     *
+     * @param command      The command to run
+     * @param dependencies Nodes of this graph that have to finish before it starts
+     * @return The node, to be used as a dependency of later children
+     * @throws IllegalArgumentException if a dependency belongs to another graph
+     * @throws IllegalStateException    if the graph already started
+     */
+    public final synchronized Node add(Command command, Node... dependencies) {
+        if (command == null) {
+            throw new IllegalArgumentException("Cannot add a null command to the graph.");
+        }
+        if (begun) {
+            throw new IllegalStateException("Cannot add commands to a graph that already started.");
+        }
+        List<Node> deps = new ArrayList<>(dependencies.length);
+        for (Node dependency : dependencies) {
+            if (dependency == null || dependency.owner() != this) {
+                throw new IllegalArgumentException("Dependencies must be nodes of this graph.");
+            }
+            if (!deps.contains(dependency)) deps.add(dependency);
+        }
+        Node node = new Node(command, deps);
+        for (Node dependency : deps) {
+            dependency.dependents.add(node);
+        }
+        nodes.add(node);
+        return node;
+    }
+
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Runs the graph on an engine, every child on the engine pool.
+     * engine.addCommand(graph) does the same
+     *
+     * @return Completes with the graph once every node finished, failed or was cancelled.
+     *         Fails with the first error thrown by a node, after the rest of the graph has settled,
+     *         or with CancellationException if the graph was stopped
+     * @throws IllegalStateException if the graph already started
+     */
+    public CompletableFuture<CommandGraph> run(SteveCommandLib2 engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Engine cannot be null");
+        }
+        begin(node -> {
+            node.launched = asParallel(node.command);
+            engine.addParallelCommand(node.launched).whenComplete((command, error) -> settle(node, error));
+        });
+        return completion;
+    }
+
+    /**
+     * Steps the running children in this thread, for when the graph is inside something that steps it frame by frame.
+     * Added to an engine the graph never gets here, its children run on the pool instead
+     */
+    @Override
+    public void execute(long delta) {
+        if (!begun) {
+            begin(node -> {
+                node.command.start();
+                inline.add(node);
+            });
+        }
+        for (Node node : inline.toArray(new Node[0])) {
+            try {
+                node.command.execute(delta);
+            } catch (Exception e) {
+                node.command.handleError(e);
+                inline.remove(node);
+                settle(node, e);
+                continue;
+            }
+            if (node.command.isFinished() || !node.command.isRunning()) {
+                inline.remove(node);
+                settle(node, null);
+            }
+        }
+        super.execute(delta);
+    }
+
+    /**
+     * Stops the running children and cancels the ones that did not start yet.
+     * Children stopped before they finished end up CANCELLED, like the ones that never started
+     */
+    @Override
+    public void stop() {
+        // a graph that already ended keeps its result
+        if (graphEndNanos < 0) stopped = true;
+        super.stop();
+        if (!begun) return;
+        for (Node node : nodes) {
+            if (node.state.get() == NodeState.RUNNING) {
+                // on the engine, stopping the Step keeps the pool from stepping the command once more
+                ParallelCommand launched = node.launched;
+                if (launched != null) {
+                    launched.stop();
+                } else {
+                    // stepped inline: nothing will step it again to notice
+                    node.command.stop();
+                    inline.remove(node);
+                    settle(node, null);
+                }
+            } else {
+                cancel(node);
+            }
+        }
+    }
+
+    @Override
+    public void handleError(Exception e) {
+
+    }
+
+    /**
+     * @return Wall time of the whole graph in ns, so far if it is still running (-1 before it starts)
+     */
+    public long getElapsedNanos() {
+        if (graphStartNanos < 0) return -1;
+        return (graphEndNanos < 0 ? System.nanoTime() : graphEndNanos) - graphStartNanos;
+    }
+
+    /**
+     * The chain of nodes that decided when the graph ended: starting from the node that ended last,
+     * each step goes to the dependency that ended last. Speeding up anything off this chain doesn't make the graph faster
+     *
+     * @return The critical path in execution order, empty until the graph ends and for a stopped graph
+     */
+    public List<Node> getCriticalPath() {
+        if (graphEndNanos < 0 || stopped) return Collections.emptyList();
+
+        Node current = null;
+        for (Node node : nodes) {
+            if (node.endNanos >= 0 && (current == null || node.endNanos > current.endNanos)) current = node;
+        }
+        List<Node> path = new ArrayList<>();
+        while (current != null) {
+            path.add(current);
+            Node next = null;
+            for (Node dependency : current.dependencies) {
+                if (dependency.endNanos >= 0 && (next == null || dependency.endNanos > next.endNanos)) next = dependency;
+            }
+            current = next;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @return Time spent running the nodes of the critical path, in ns. The rest of getElapsedNanos is scheduling overhead
+     */
+    public long getCriticalPathNanos() {
+        long total = 0;
+        for (Node node : getCriticalPath()) {
+            total += Math.max(0, node.getDurationNanos());
+        }
+        return total;
+    }
+
+    private synchronized void begin(Consumer<Node> launcher) {
+        if (begun) {
+            throw new IllegalStateException("The graph already started.");
+        }
+        begun = true;
+        this.launcher = launcher;
+        if (!running) {
+            start();
+        }
+        graphStartNanos = System.nanoTime();
+        unsettled.set(nodes.size());
+        if (nodes.isEmpty()) {
+            end();
+            return;
+        }
+        for (Node node : nodes) {
+            if (node.dependencies.isEmpty()) launch(node);
+        }
+    }
+
+    private void launch(Node node) {
+        if (!node.state.compareAndSet(NodeState.WAITING, NodeState.RUNNING)) return;
+        node.startNanos = System.nanoTime();
+        launcher.accept(node);
+    }
+
+    private void settle(Node node, Throwable error) {
+        node.endNanos = System.nanoTime();
+        if (error == null && stopped && !node.command.isFinished()) {
+            // the step ends normally when it's stopped, but the command never got to finish
+            node.state.set(NodeState.CANCELLED);
+            for (Node dependent : node.dependents) {
+                cancel(dependent);
+            }
+        } else if (error == null) {
+            node.state.set(NodeState.FINISHED);
+            for (Node dependent : node.dependents) {
+                if (dependent.pendingDependencies.decrementAndGet() == 0) launch(dependent);
+            }
+        } else {
+            node.error = error;
+            node.state.set(NodeState.FAILED);
+            firstError.compareAndSet(null, error);
+            for (Node dependent : node.dependents) {
+                cancel(dependent);
+            }
+        }
+        settled();
+    }
+
+    private void cancel(Node node) {
+        if (!node.state.compareAndSet(NodeState.WAITING, NodeState.CANCELLED)) return;
+        for (Node dependent : node.dependents) {
+            cancel(dependent);
+        }
+        settled();
+    }
+
+    private void settled() {
+        if (unsettled.decrementAndGet() == 0) end();
+    }
+
+    private void end() {
+        graphEndNanos = System.nanoTime();
+        finish();
+        Throwable error = firstError.get();
+        if (error == null && stopped) {
+            error = new CancellationException("The graph was stopped before every node finished");
+        }
+        if (error == null) completion.complete(this);
+        else completion.completeExceptionally(error);
+    }
+
+    private static ParallelCommand asParallel(Command command) {
+        return command instanceof ParallelCommand parallel ? parallel : new Step(command);
+    }
+
+    /**
+     * Lets any command run on the pool as a node: started once, then stepped every frame until it finishes
+     */
+    private static final class Step extends ParallelCommand {
+        private final Command command;
+
+        Step(Command command) {
+            this.command = command;
+        }
+
+        @Override
+        public void start() {
+            super.start();
+            command.start();
+            if (command.isFinished()) finish();
+        }
+
+        @Override
+        public void execute(long delta) {
+            try {
+                command.execute(delta);
+            } catch (Exception e) {
+                command.handleError(e);
+                throw e;
+            }
+            if (command.isFinished() || !command.isRunning()) finish();
+        }
+
+        @Override
+        public void stop() {
+            super.stop();
+            command.stop();
+        }
+
+        @Override
+        public void handleError(Exception e) {
+            command.handleError(e);
+        }
+
+        @Override
+        public String getID() {
+            return command.getID();
+        }
+    }
+}
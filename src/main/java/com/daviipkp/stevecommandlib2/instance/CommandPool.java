@@ -0,0 +1,124 @@
+package com.daviipkp.stevecommandlib2.instance;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of reusable QueuedCommands.
+ * A command taken with obtain() goes back to the pool by itself when the engine is done with it
+ * (finished or failed), after reset() clears it. With a warm pool the submit, execute and complete cycle
+ * doesn't allocate a command per dispatch.
+ *
+ * <pre>
+ * CommandPool&lt;InstantCommand&gt; pool = new CommandPool&lt;&gt;(InstantCommand::new, 1024).prefill(256);
+ *
+ * InstantCommand command = pool.obtain();
+ * command.setCommand(HEAL_TASK);
+ * engine.addCommand(command); // don't touch it after this
+ * </pre>
+ *
+ * @param <T> The command type handed out
+ */
+public final class CommandPool<T extends QueuedCommand> {
+
+    private final Supplier<? extends T> factory;
+    private final ArrayBlockingQueue<T> free;
+    private final int capacity;
+    private final AtomicLong created = new AtomicLong(0);
+    private final AtomicLong reused = new AtomicLong(0);
+
+    /**
+     * @param factory  Creates a new command when the pool is empty
+     * @param capacity Most idle commands kept. Commands released into a full pool are left to the GC
+     */
+    public CommandPool(Supplier<? extends T> factory, int capacity) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Factory cannot be null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Pool capacity must be >= 1");
+        }
+        this.factory = factory;
+        this.capacity = capacity;
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Creates commands up front, so the first dispatches don't allocate either
+     *
+     * @param count How many commands to create (capped at the capacity)
+     */
+    public CommandPool<T> prefill(int count) {
+        for (int i = free.size(); i < Math.min(count, capacity); i++) {
+            T command = create();
+            command.markPooled();
+            if (!free.offer(command)) break;
+        }
+        return this;
+    }
+
+    /**
+     * @return An idle command from the pool, or a new one if the pool is empty
+     */
+    public T obtain() {
+        T command = free.poll();
+        if (command == null) {
+            command = create();
+        } else {
+            reused.incrementAndGet();
+        }
+        command.clearPooled();
+        return command;
+    }
+
+    /**
+     * Resets a command and puts it back in the pool. Only needed for commands that were never added to the engine.
+     * Releasing a command twice does nothing
+     *
+     * @throws IllegalArgumentException if the command came from another pool
+     * @throws IllegalStateException if the command is still queued
+     */
+    public void release(T command) {
+        if (command.pool != this) {
+            throw new IllegalArgumentException("Command " + command.getID() + " was not obtained from this pool.");
+        }
+        if (command.isPooled()) return;
+        if (command.isEnqueued()) {
+            throw new IllegalStateException("Command " + command.getID() + " is still queued.");
+        }
+        // only one of two racing releases wins, so the command can't end up in the pool twice
+        if (!command.markPooled()) return;
+        command.reset();
+        free.offer(command);
+    }
+
+    @SuppressWarnings("unchecked")
+    void recycle(QueuedCommand command) {
+        release((T) command);
+    }
+
+    private T create() {
+        T command = factory.get();
+        command.pool = this;
+        created.incrementAndGet();
+        return command;
+    }
+
+    public int getCapacity() { return capacity; }
+
+    /**
+     * @return Idle commands currently held
+     */
+    public int getAvailable() { return free.size(); }
+
+    /**
+     * @return Commands built by the factory so far
+     */
+    public long getCreatedCount() { return created.get(); }
+
+    /**
+     * @return obtain() calls served from the pool
+     */
+    public long getReusedCount() { return reused.get(); }
+}
@@ -0,0 +1,425 @@
+package com.daviipkp.stevecommandlib2.instance;
+
+import com.daviipkp.stevecommandlib2.QueueScheduling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unbounded multi-producer / single-consumer queue of QueuedCommands, FIFO by default.
+ * Producers never lock: an enqueue is one atomic swap on the tail plus a link write.
+ * The queue is intrusive (the command itself is the node), so enqueue and dequeue
+ * are O(1) and allocate nothing.
+ *
+ * With PRIORITY or DEADLINE scheduling, the consumer moves the linked commands into a binary heap
+ * before picking the head, so producers stay lock-free and ordering costs O(log n) on the consumer side.
+ * Once peek() returned a command it stays the head until it's removed, so a running command is never preempted.
+ *
+ * A queue can have a capacity: tryOffer refuses commands once it's full, awaitSpace waits for room
+ * and dropOldest makes room by taking out the oldest command that didn't start yet.
+ *
+ * A command can only be inside one CommandQueue at a time.
+ * Consumer operations (peek, removeHead, poll, clear) are serialized internally,
+ * but are meant to be driven by a single thread (the engine tick thread).
+ */
+public final class CommandQueue {
+
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(CommandQueue.class, "tail", QueuedCommand.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // placeholder node, keeps head and tail from ever being null
+    private final QueuedCommand stub = new Stub();
+
+    // producer side, swapped atomically by offer()
+    @SuppressWarnings("unused")
+    private volatile QueuedCommand tail = stub;
+
+    // consumer side, only touched while holding the consumer lock
+    private volatile QueuedCommand head = stub;
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private static final Comparator<QueuedCommand> ORDER = (a, b) -> {
+        if (a.rank != b.rank) return Long.compare(a.rank, b.rank);
+        if (a.tie != b.tie) return Long.compare(a.tie, b.tie);
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    private final QueueScheduling scheduling;
+    private final long agingNanos;
+    // ordered queues only, consumer side
+    private final PriorityQueue<QueuedCommand> heap;
+    // the command peek() returned, never dropped nor preempted
+    private QueuedCommand selected;
+    private long nextSequence = 0;
+
+    private final int capacity;
+    // last command taken by dropOldest that is still linked, everything before it is dropped or selected
+    private QueuedCommand dropCursor;
+    private final AtomicInteger blocked = new AtomicInteger(0);
+    private final ReentrantLock spaceLock = new ReentrantLock();
+    private final Condition spaceFreed = spaceLock.newCondition();
+
+    public CommandQueue() {
+        this(QueueScheduling.FIFO, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param scheduling How the head is picked
+     * @param agingNanos Waiting time worth one priority level (PRIORITY), or the implicit deadline
+     *                   of commands without one (DEADLINE). 0 turns aging off
+     * @param capacity   How many commands tryOffer accepts before refusing
+     */
+    public CommandQueue(QueueScheduling scheduling, long agingNanos, int capacity) {
+        if (scheduling == null || agingNanos < 0 || capacity < 1) {
+            throw new IllegalArgumentException("Scheduling cannot be null, aging must be >= 0 and capacity >= 1");
+        }
+        this.scheduling = scheduling;
+        this.agingNanos = agingNanos;
+        this.capacity = capacity;
+        this.heap = scheduling == QueueScheduling.FIFO ? null : new PriorityQueue<>(ORDER);
+    }
+
+    public QueueScheduling getScheduling() {
+        return scheduling;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Appends a command to the end of the queue, even if it's full. Safe to call from any thread
+     *
+     * @param command The command to enqueue
+     * @throws IllegalStateException if the command is already inside a queue
+     */
+    public void offer(QueuedCommand command) {
+        if (!command.markEnqueued()) {
+            throw new IllegalStateException("Command " + command.getID() + " is already queued.");
+        }
+        stamp(command);
+        size.incrementAndGet();
+        link(command);
+    }
+
+    /**
+     * Appends a command only if the queue is under its capacity. Safe to call from any thread
+     *
+     * @param command The command to enqueue
+     * @return false if the queue is full
+     * @throws IllegalStateException if the command is already inside a queue
+     */
+    public boolean tryOffer(QueuedCommand command) {
+        if (!command.markEnqueued()) {
+            throw new IllegalStateException("Command " + command.getID() + " is already queued.");
+        }
+        stamp(command);
+        if (capacity == Integer.MAX_VALUE) {
+            size.incrementAndGet();
+            link(command);
+            return true;
+        }
+        int current;
+        do {
+            current = size.get();
+            if (current >= capacity) {
+                command.clearEnqueued();
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        link(command);
+        return true;
+    }
+
+    private void stamp(QueuedCommand command) {
+        if (heap != null || command.hasDeadline()) {
+            command.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Waits until the queue is under its capacity. The room isn't reserved, so tryOffer can still fail afterwards
+     *
+     * @param timeoutNanos How long to wait at most, negative to wait as long as needed
+     * @return false if the time ran out or the thread was interrupted (the interrupt flag is kept)
+     */
+    public boolean awaitSpace(long timeoutNanos) {
+        return awaitBelow(capacity, timeoutNanos);
+    }
+
+    /**
+     * Waits until fewer than limit commands are queued, for producers that keep the queue shorter than its capacity
+     *
+     * @param limit        Depth to get under
+     * @param timeoutNanos How long to wait at most, negative to wait as long as needed
+     * @return false if the time ran out or the thread was interrupted (the interrupt flag is kept)
+     */
+    public boolean awaitBelow(int limit, long timeoutNanos) {
+        if (size.get() < limit) return true;
+        long deadline = System.nanoTime() + timeoutNanos;
+        blocked.incrementAndGet();
+        spaceLock.lock();
+        try {
+            while (size.get() >= limit) {
+                if (timeoutNanos < 0) {
+                    spaceFreed.await();
+                } else {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) return false;
+                    spaceFreed.awaitNanos(left);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            spaceLock.unlock();
+            blocked.decrementAndGet();
+        }
+    }
+
+    /**
+     * Takes out the oldest command that didn't start yet, to make room for a newer one.
+     * Pooled commands go back to their pool. Others stay linked until the consumer reaches them,
+     * so they can only be queued again after that. O(1) in FIFO queues, O(n) in ordered ones
+     *
+     * @return false if every queued command already started
+     */
+    public synchronized boolean dropOldest() {
+        if (heap != null && !heap.isEmpty()) {
+            // everything in the heap arrived before what is still linked
+            QueuedCommand victim = null;
+            for (QueuedCommand waiting : heap) {
+                if (victim == null || waiting.sequence < victim.sequence) victim = waiting;
+            }
+            heap.remove(victim);
+            discard(victim);
+        } else {
+            QueuedCommand node = dropCursor != null ? dropCursor.next : head;
+            while (node != null && (node == stub || node == selected || node.dropped)) {
+                node = node.next;
+            }
+            if (node == null) return false;
+            node.dropped = true;
+            dropCursor = node;
+        }
+        freed();
+        return true;
+    }
+
+    // a dropped command leaving the queue for good
+    private void discard(QueuedCommand command) {
+        if (command == dropCursor) dropCursor = null;
+        command.dropped = false;
+        command.next = null;
+        command.clearEnqueued();
+        command.recycle();
+    }
+
+    private void freed() {
+        size.decrementAndGet();
+        if (blocked.get() > 0) {
+            spaceLock.lock();
+            try {
+                spaceFreed.signalAll();
+            } finally {
+                spaceLock.unlock();
+            }
+        }
+    }
+
+    private void link(QueuedCommand node) {
+        node.next = null;
+        QueuedCommand prev = (QueuedCommand) TAIL.getAndSet(this, node);
+        prev.next = node;
+    }
+
+    /**
+     * @return The first command in the queue without removing it, or null if empty
+     */
+    public synchronized QueuedCommand peek() {
+        if (selected != null) {
+            return selected;
+        }
+        if (heap == null) {
+            selected = peekLive();
+            return selected;
+        }
+        QueuedCommand arrived;
+        while ((arrived = peekLive()) != null && unlink() == arrived) {
+            order(arrived);
+            heap.add(arrived);
+        }
+        selected = heap.poll();
+        return selected;
+    }
+
+    /**
+     * @return The first linked command that wasn't dropped, after unlinking the dropped ones before it
+     */
+    private QueuedCommand peekLive() {
+        QueuedCommand h;
+        while ((h = peekLinked()) != null && h.dropped) {
+            if (unlink() != h) {
+                // a producer is still linking behind it
+                return null;
+            }
+            discard(h);
+        }
+        return h;
+    }
+
+    private void order(QueuedCommand command) {
+        command.sequence = nextSequence++;
+        if (scheduling == QueueScheduling.PRIORITY) {
+            // aging moves every waiting command up at the same rate, so the order is fixed when it arrives
+            command.rank = agingNanos > 0 ? command.enqueuedAt - command.getPriority() * agingNanos : -command.getPriority();
+            command.tie = 0;
+        } else {
+            if (command.hasDeadline()) {
+                command.rank = command.getDeadlineNanoTime();
+            } else {
+                command.rank = agingNanos > 0 ? command.enqueuedAt + agingNanos : Long.MAX_VALUE;
+            }
+            command.tie = -command.getPriority();
+        }
+    }
+
+    private QueuedCommand peekLinked() {
+        QueuedCommand h = head;
+        if (h == stub) {
+            QueuedCommand next = h.next;
+            if (next == null) {
+                return null;
+            }
+            head = next;
+            h = next;
+        }
+        return h;
+    }
+
+    /**
+     * Removes and returns the first command, or null if the queue is empty
+     * (or the only pending producer has not finished linking yet)
+     */
+    public synchronized QueuedCommand poll() {
+        QueuedCommand h = peek();
+        if (h == null) {
+            return null;
+        }
+        if (heap == null && unlink() != h) {
+            // a producer swapped the tail but did not link yet, try again on the next call
+            return null;
+        }
+        selected = null;
+        h.clearEnqueued();
+        freed();
+        return h;
+    }
+
+    /**
+     * Takes the first linked command out of the list, without touching its state or the size
+     */
+    private QueuedCommand unlink() {
+        QueuedCommand h = peekLinked();
+        if (h == null) {
+            return null;
+        }
+        QueuedCommand next = h.next;
+        if (next == null) {
+            if (h != tail) {
+                // a producer swapped the tail but did not link yet, try again on the next call
+                return null;
+            }
+            link(stub);
+            next = h.next;
+            if (next == null) {
+                return null;
+            }
+        }
+        head = next;
+        h.next = null;
+        return h;
+    }
+
+    /**
+     * Removes the first command only if it is still the expected one.
+     * Used by the engine after executing the head, so a concurrent clear() can't make it drop the wrong command
+     *
+     * @param expected The command that was returned by peek()
+     * @return true if the command was removed
+     */
+    public synchronized boolean removeHead(QueuedCommand expected) {
+        if (peek() != expected) {
+            return false;
+        }
+        return poll() == expected;
+    }
+
+    /**
+     * Removes every command currently in the queue, dropped ones included
+     */
+    public synchronized void clear() {
+        while (poll() != null) {
+            // drain
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Weakly consistent copy of the queue contents, in the order they would leave the queue.
+     * Commands added or removed while the copy is made may or may not show up.
+     * In ordered queues, commands that arrived since the last peek are at the end, in FIFO order
+     *
+     * @return A new list with the queued commands
+     */
+    public List<QueuedCommand> snapshot() {
+        List<QueuedCommand> copy = new ArrayList<>(Math.max(0, size.get()));
+        if (heap != null) {
+            synchronized (this) {
+                if (selected != null) copy.add(selected);
+                QueuedCommand[] waiting = heap.toArray(new QueuedCommand[0]);
+                Arrays.sort(waiting, ORDER);
+                copy.addAll(List.of(waiting));
+            }
+        }
+        for (QueuedCommand node = head; node != null; node = node.next) {
+            if (node != stub && !node.dropped) {
+                copy.add(node);
+            }
+        }
+        return copy;
+    }
+
+    private static final class Stub extends QueuedCommand {
+        @Override
+        public void handleError(Exception e) {
+
+        }
+    }
+}
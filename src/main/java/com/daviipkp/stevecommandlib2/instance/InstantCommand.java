@@ -13,6 +13,12 @@ public class InstantCommand extends QueuedCommand {
         command = arg0;
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        command = null;
+    }
+
     @Override
     public void start() {
         super.start();
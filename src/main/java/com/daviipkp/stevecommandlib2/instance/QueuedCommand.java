@@ -1,5 +1,135 @@
 package com.daviipkp.stevecommandlib2.instance;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+
 public abstract class QueuedCommand extends Command{
 
+    private static final VarHandle ENQUEUED;
+    private static final VarHandle POOLED;
+
+    static {
+        try {
+            ENQUEUED = MethodHandles.lookup().findVarHandle(QueuedCommand.class, "enqueued", boolean.class);
+            POOLED = MethodHandles.lookup().findVarHandle(QueuedCommand.class, "pooled", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // intrusive link used by CommandQueue, so queueing a command doesn't allocate a node
+    volatile QueuedCommand next;
+
+    @SuppressWarnings("unused")
+    private volatile boolean enqueued = false;
+
+    // the CommandPool it came from
+    CommandPool<?> pool;
+    // set while the command sits idle in its pool, so two releases can't both put it back
+    private volatile boolean pooled = false;
+
+    private int priority = 0;
+    // relative to when the command is queued, 0 for none
+    private long deadlineNanos = 0;
+
+    // written by CommandQueue when the command is queued and when it's ordered
+    long enqueuedAt;
+    // dropped from its queue for a newer command, but still linked until the consumer reaches it
+    boolean dropped;
+    long rank;
+    long tie;
+    long sequence;
+
+    /**
+     * Higher priorities leave the queue first when the engine is built with QueueScheduling.PRIORITY,
+     * and break deadline ties with QueueScheduling.DEADLINE. Ignored by FIFO queues (and lanes)
+     *
+     * @param priority Any int, 0 by default
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets how long after being queued the command should be finished. QueueScheduling.DEADLINE runs the earliest deadline first;
+     * with any scheduling, finishing late is counted in the engine deadline metrics
+     *
+     * @param deadline Time allowed from addCommand to the end of the command, null to clear it
+     * @throws IllegalArgumentException if the deadline is not positive
+     */
+    public void setDeadline(Duration deadline) {
+        if (deadline == null) {
+            this.deadlineNanos = 0;
+            return;
+        }
+        if (deadline.isNegative() || deadline.isZero()) {
+            throw new IllegalArgumentException("Deadline must be positive");
+        }
+        this.deadlineNanos = deadline.toNanos();
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos > 0;
+    }
+
+    /**
+     * @return The deadline as a System.nanoTime() value, only meaningful once the command is queued and hasDeadline() is true
+     */
+    public long getDeadlineNanoTime() {
+        return enqueuedAt + deadlineNanos;
+    }
+
+    /**
+     * @return When the command was queued (System.nanoTime()), only tracked for ordered queues and commands with a deadline
+     */
+    public long getEnqueuedNanoTime() {
+        return enqueuedAt;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        priority = 0;
+        deadlineNanos = 0;
+    }
+
+    boolean markEnqueued() {
+        return ENQUEUED.compareAndSet(this, false, true);
+    }
+
+    void clearEnqueued() {
+        enqueued = false;
+    }
+
+    boolean isEnqueued() {
+        return enqueued;
+    }
+
+    boolean markPooled() {
+        return POOLED.compareAndSet(this, false, true);
+    }
+
+    void clearPooled() {
+        pooled = false;
+    }
+
+    boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Hands the command back to the CommandPool it came from. The engine calls it once the command leaves the queue,
+     * so it must not be used afterwards. Does nothing for commands that weren't obtained from a pool
+     */
+    public void recycle() {
+        CommandPool<?> owner = pool;
+        if (owner != null) {
+            owner.recycle(this);
+        }
+    }
 }
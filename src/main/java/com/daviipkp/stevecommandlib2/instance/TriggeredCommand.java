@@ -1,22 +1,131 @@
 package com.daviipkp.stevecommandlib2.instance;
 
+import com.daviipkp.stevecommandlib2.annotations.SingleThreaded;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 public abstract class TriggeredCommand extends Command {
 
     private long timeBetweenChecks = 1000;
     private long timer = 0;
 
+    // Event subscriptions, declared before the trigger is added to the engine
+    private final Set<String> topics = new LinkedHashSet<>();
+    private final Set<Class<?>> eventTypes = new LinkedHashSet<>();
+    private boolean polling = true;
+
+    private boolean singleThreaded = false;
+    private static final ClassValue<Boolean> SINGLE_THREADED_TYPE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(SingleThreaded.class);
+        }
+    };
+
+    /**
+     * Accumulates delta and checks the trigger every timeBetweenChecks.
+     * The engine doesn't call this (it schedules checks with a timing wheel), it's kept for driving triggers by hand
+     */
     public void tick(long delta) {
         timer += delta;
         if(timer>=timeBetweenChecks) {
             timer = 0;
-            if(checkTrigger()) {
-                execute(delta);
-            }
+            evaluate(delta);
+        }
+    }
+
+    /**
+     * Checks the trigger once and executes the command if it fired
+     *
+     * @param delta Time since the previous check
+     */
+    public void evaluate(long delta) {
+        if(checkTrigger()) {
+            execute(delta);
+        }
+    }
+
+    /**
+     * Delivers a published event and executes the command if onEvent accepts it
+     *
+     * @param topic   Topic the event was published on, null for typed events
+     * @param payload The published object
+     * @param delta   Time since the previous check
+     */
+    public void evaluateEvent(String topic, Object payload, long delta) {
+        if(onEvent(topic, payload)) {
+            execute(delta);
         }
     }
 
     public abstract boolean checkTrigger();
 
+    /**
+     * Called on the tick thread when an event this trigger subscribed to is published.
+     * By default it just checks the trigger again
+     *
+     * @param topic   Topic the event was published on, null for typed events
+     * @param payload The published object
+     * @return true if the command should execute
+     */
+    protected boolean onEvent(String topic, Object payload) {
+        return checkTrigger();
+    }
+
+    /**
+     * Wakes this trigger whenever something is published on the topic.
+     * Subscribing switches the trigger to event-driven mode (no polling), call setPolling(true) after it to keep both.
+     * Must be called before the trigger is added to the engine
+     */
+    protected void subscribe(String topic) {
+        topics.add(topic);
+        polling = false;
+    }
+
+    /**
+     * Wakes this trigger whenever an event of this type (or a subtype) is published.
+     * Same rules as subscribe(String)
+     */
+    protected void subscribe(Class<?> eventType) {
+        eventTypes.add(eventType);
+        polling = false;
+    }
+
+    /**
+     * @param arg0 true to check the trigger every timeBetweenChecks, false to only wake it on events
+     */
+    protected void setPolling(boolean arg0) {
+        polling = arg0;
+    }
+
+    public boolean isPolling() {
+        return polling;
+    }
+
+    public Set<String> getSubscribedTopics() {
+        return Collections.unmodifiableSet(topics);
+    }
+
+    public Set<Class<?>> getSubscribedEventTypes() {
+        return Collections.unmodifiableSet(eventTypes);
+    }
+
+    /**
+     * @param arg0 true to keep this trigger on the tick thread when parallel trigger evaluation is enabled
+     */
+    protected void setSingleThreaded(boolean arg0) {
+        singleThreaded = arg0;
+    }
+
+    /**
+     * @return true if the trigger opted out of parallel evaluation (flag or @SingleThreaded)
+     */
+    public boolean isSingleThreaded() {
+        return singleThreaded || SINGLE_THREADED_TYPE.get(getClass());
+    }
+
     @Override
     public void execute(long delta) {
         super.execute(delta);
@@ -25,4 +134,8 @@ public abstract class TriggeredCommand extends Command {
     protected void setTimeBetweenChecks(long arg0) {
         timeBetweenChecks = arg0;
     }
+
+    public long getTimeBetweenChecks() {
+        return timeBetweenChecks;
+    }
 }
@@ -0,0 +1,313 @@
+package com.daviipkp.stevecommandlib2.processor;
+
+import com.daviipkp.stevecommandlib2.annotations.CommandDescribe;
+import com.daviipkp.stevecommandlib2.annotations.FieldDescribe;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Generates a CommandIndex for every package holding @CommandDescribe commands, so Jsoning can register them
+ * without scanning the classpath. Each generated class is named GeneratedCommandIndex_ followed by a checksum
+ * of the commands it lists, so two jars (or two compilations) sharing a package don't shadow each other's index,
+ * and is added to the entries already in META-INF/services/com.daviipkp.stevecommandlib2.CommandIndex.
+ * An index only claims a package as covered when every command the compiler can see in it, compiled now or
+ * found on the classpath, is listed; an incremental compile that rebuilt part of a package leaves it uncovered.
+ * The guide JSON is built here exactly as Jsoning.generateGuide would print it.
+ */
+@SupportedAnnotationTypes("com.daviipkp.stevecommandlib2.annotations.CommandDescribe")
+public class CommandIndexProcessor extends AbstractProcessor {
+
+    static final String INDEX_CLASS = "GeneratedCommandIndex";
+    private static final String COMMAND_CLASS = "com.daviipkp.stevecommandlib2.instance.Command";
+    private static final String SERVICE_FILE = "META-INF/services/com.daviipkp.stevecommandlib2.CommandIndex";
+
+    private record Entry(String name, String binaryName, String guide) {}
+
+    // package -> commands found in this round, kept sorted so the output is stable between builds
+    private final Map<String, List<Entry>> packages = new TreeMap<>();
+    private final List<String> indexClasses = new ArrayList<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!indexClasses.isEmpty()) {
+                writeServiceFile();
+            }
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(CommandDescribe.class)) {
+            if (!element.getKind().isClass()) continue;
+
+            TypeElement type = (TypeElement) element;
+            if (!isCommand(type)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Ignoring command '" + type.getQualifiedName() + "' because it does not extend Command class.", type);
+                continue;
+            }
+
+            CommandDescribe desc = type.getAnnotation(CommandDescribe.class);
+            String cmdName = !desc.name().isEmpty() ? desc.name() : type.getSimpleName().toString();
+            String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+            String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+
+            packages.computeIfAbsent(pkg, k -> new ArrayList<>())
+                    .add(new Entry(cmdName.toLowerCase(), binaryName, guide(type, cmdName, desc)));
+        }
+
+        // sources are written in the round that found the commands, so javac still compiles them normally
+        if (!packages.isEmpty()) {
+            writeIndexes();
+            packages.clear();
+        }
+        return false;
+    }
+
+    private boolean isCommand(TypeElement type) {
+        TypeElement commandType = processingEnv.getElementUtils().getTypeElement(COMMAND_CLASS);
+        return commandType != null && processingEnv.getTypeUtils().isAssignable(type.asType(), processingEnv.getTypeUtils().erasure(commandType.asType()));
+    }
+
+    // same layout as Jackson's default pretty printer, which is what Jsoning.stringify uses
+    private String guide(TypeElement type, String cmdName, CommandDescribe desc) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append('{').append(nl);
+        sb.append("  \"type\" : ").append(jsonString(cmdName)).append(',').append(nl);
+        sb.append("  \"description\" : ").append(jsonString(desc.description()));
+
+        List<String> arguments = new ArrayList<>();
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD) continue;
+            FieldDescribe fieldInfo = member.getAnnotation(FieldDescribe.class);
+            if (fieldInfo == null) continue;
+
+            String fieldDesc = fieldInfo.description();
+            if (fieldDesc.isEmpty()) {
+                fieldDesc = "<" + simpleName(((VariableElement) member).asType()) + ">";
+            }
+            arguments.add("    " + jsonString(member.getSimpleName().toString()) + " : " + jsonString(fieldDesc));
+        }
+
+        if (!arguments.isEmpty()) {
+            sb.append(',').append(nl).append("  \"arguments\" : {").append(nl);
+            sb.append(String.join("," + nl, arguments)).append(nl).append("  }");
+        }
+        sb.append(nl).append('}');
+        return sb.toString();
+    }
+
+    // what Class.getSimpleName returns for the erased field type at runtime
+    private String simpleName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return type.toString();
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            return simpleName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.DECLARED) {
+            return ((DeclaredType) erased).asElement().getSimpleName().toString();
+        }
+        return erased.toString();
+    }
+
+    private void writeIndexes() {
+        Filer filer = processingEnv.getFiler();
+
+        for (Map.Entry<String, List<Entry>> pkg : packages.entrySet()) {
+            pkg.getValue().sort(Comparator.comparing(Entry::binaryName));
+            // rounds find disjoint sets of commands, so a package indexed again in a later round gets another name too
+            String simpleName = INDEX_CLASS + "_" + checksum(pkg.getValue());
+            String className = pkg.getKey().isEmpty() ? simpleName : pkg.getKey() + "." + simpleName;
+
+            PackageElement packageElement = processingEnv.getElementUtils().getPackageElement(pkg.getKey());
+            boolean covered = covers(packageElement, pkg.getValue());
+            try (Writer w = filer.createSourceFile(className, packageElement).openWriter()) {
+                w.write(indexSource(pkg.getKey(), simpleName, pkg.getValue(), covered));
+                indexClasses.add(className);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + className + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String checksum(List<Entry> entries) {
+        CRC32 crc = new CRC32();
+        for (Entry e : entries) {
+            crc.update(e.binaryName().getBytes(StandardCharsets.UTF_8));
+            crc.update('\n');
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * @return true if every @CommandDescribe command the compiler sees in the package is one of the entries
+     */
+    private boolean covers(PackageElement packageElement, List<Entry> entries) {
+        if (packageElement == null) return false;
+        Set<String> indexed = new TreeSet<>();
+        for (Entry e : entries) {
+            indexed.add(e.binaryName());
+        }
+        return covers(packageElement.getEnclosedElements(), indexed);
+    }
+
+    private boolean covers(List<? extends Element> elements, Set<String> indexed) {
+        for (Element element : elements) {
+            if (!element.getKind().isClass() && !element.getKind().isInterface()) continue;
+            TypeElement type = (TypeElement) element;
+            if (type.getAnnotation(CommandDescribe.class) != null && isCommand(type)
+                    && !indexed.contains(processingEnv.getElementUtils().getBinaryName(type).toString())) {
+                return false;
+            }
+            if (!covers(type.getEnclosedElements(), indexed)) return false;
+        }
+        return true;
+    }
+
+    // keeps what earlier compilations into the same output listed, javac would otherwise replace the file
+    private void writeServiceFile() {
+        Set<String> entries = new LinkedHashSet<>();
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (BufferedReader r = new BufferedReader(existing.openReader(true))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    String className = (comment < 0 ? line : line.substring(0, comment)).trim();
+                    if (!className.isEmpty()) entries.add(className);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // no earlier file
+        }
+        entries.addAll(indexClasses);
+
+        try {
+            FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer w = services.openWriter()) {
+                for (String className : entries) {
+                    w.write(className);
+                    w.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private static String indexSource(String pkg, String simpleName, List<Entry> entries, boolean covered) {
+        StringBuilder sb = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            sb.append("package ").append(pkg).append(";\n\n");
+        }
+        sb.append("@javax.annotation.processing.Generated(\"").append(CommandIndexProcessor.class.getName()).append("\")\n");
+        sb.append("public final class ").append(simpleName).append(" implements com.daviipkp.stevecommandlib2.CommandIndex {\n\n");
+
+        sb.append("    private static final java.util.Map<String, String> COMMANDS = java.util.Map.ofEntries(");
+        appendEntries(sb, entries, true);
+        sb.append(");\n\n");
+        sb.append("    private static final java.util.Map<String, String> GUIDES = java.util.Map.ofEntries(");
+        appendEntries(sb, entries, false);
+        sb.append(");\n\n");
+
+        sb.append("    @Override\n    public java.util.Map<String, String> commands() { return COMMANDS; }\n\n");
+        sb.append("    @Override\n    public java.util.Map<String, String> guides() { return GUIDES; }\n");
+        if (covered) {
+            sb.append("\n    @Override\n    public java.util.Set<String> coveredPackages() { return java.util.Set.of(")
+                    .append(javaString(pkg)).append("); }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void appendEntries(StringBuilder sb, List<Entry> entries, boolean commands) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("            java.util.Map.entry(");
+            if (commands) {
+                sb.append(javaString(e.name())).append(", ").append(javaString(e.binaryName()));
+            } else {
+                sb.append(javaString(e.binaryName())).append(", ").append(javaString(e.guide()));
+            }
+            sb.append(')');
+        }
+    }
+
+    // Jackson's default escaping: quotes, backslash and control characters
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                case '\b' -> sb.append("\\b");
+                case '\f' -> sb.append("\\f");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04X", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String javaString(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.TriggeredCommand;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBusTest {
+
+    static final class Listener extends TriggeredCommand {
+        final List<Object> payloads = new ArrayList<>();
+
+        Listener(String topic) {
+            subscribe(topic);
+        }
+
+        Listener(Class<?> eventType) {
+            subscribe(eventType);
+        }
+
+        @Override
+        protected boolean onEvent(String topic, Object payload) {
+            payloads.add(payload);
+            return true;
+        }
+
+        @Override
+        public boolean checkTrigger() {
+            return false;
+        }
+
+        @Override
+        public void handleError(Exception e) {
+        }
+    }
+
+    private final TimingWheel wheel = new TimingWheel();
+    private final EventBus bus = new EventBus();
+    private SteveCommandLib2 engine;
+
+    @AfterEach
+    void stopEngine() {
+        if (engine != null) engine.stop();
+    }
+
+    private TriggerHandle subscribed(Listener listener) {
+        TriggerHandle handle = wheel.register(listener);
+        bus.subscribe(handle);
+        return handle;
+    }
+
+    @Test
+    void topicEventsOnlyReachTheirSubscribers() {
+        TriggerHandle door = subscribed(new Listener("door"));
+        subscribed(new Listener("window"));
+
+        assertEquals(1, bus.publish("door", "open"));
+        assertEquals(0, bus.publish("roof", "open"));
+
+        List<EventBus.Delivery> due = new ArrayList<>();
+        bus.drain(due);
+        assertEquals(List.of(new EventBus.Delivery(door, "door", "open")), due);
+    }
+
+    @Test
+    void typedEventsMatchSupertypesAndInterfaces() {
+        subscribed(new Listener(CharSequence.class));
+        subscribed(new Listener(Object.class));
+        subscribed(new Listener(Integer.class));
+
+        assertEquals(2, bus.publish("text"));
+    }
+
+    @Test
+    void unsubscribedAndCancelledTriggersAreNotWoken() {
+        TriggerHandle left = subscribed(new Listener("door"));
+        TriggerHandle cancelled = subscribed(new Listener("door"));
+
+        bus.unsubscribe(left);
+        cancelled.cancel();
+        assertEquals(0, bus.publish("door", "open"));
+    }
+
+    @Test
+    void drainTakesEachDeliveryOnce() {
+        subscribed(new Listener("door"));
+        bus.publish("door", 1);
+        bus.publish("door", 2);
+
+        List<EventBus.Delivery> due = new ArrayList<>();
+        bus.drain(due);
+        assertEquals(2, due.size());
+        due.clear();
+        bus.drain(due);
+        assertTrue(due.isEmpty());
+    }
+
+    @Test
+    void eventPublishedRightAfterAddTriggerWakesIt() {
+        engine = new SteveCommandLib2.Builder().build();
+        Listener listener = new Listener("door");
+        TriggerHandle handle = engine.addTrigger(listener);
+
+        // no tick ran since addTrigger, so the trigger is still in the wheel inbox
+        assertEquals(1, engine.publish("door", "open"));
+        engine.tick(1);
+
+        assertEquals(List.of("open"), listener.payloads);
+        assertTrue(handle.isDone());
+    }
+
+    @Test
+    void typedEventWakesOnlyMatchingTriggers() {
+        engine = new SteveCommandLib2.Builder().build();
+        Listener numbers = new Listener(Number.class);
+        Listener strings = new Listener(String.class);
+        engine.addTrigger(numbers);
+        engine.addTrigger(strings);
+        engine.tick(1);
+
+        engine.publish(42);
+        engine.tick(1);
+
+        assertEquals(List.of(42), numbers.payloads);
+        assertTrue(strings.payloads.isEmpty());
+        assertEquals(1, engine.getTriggerCount());
+    }
+}
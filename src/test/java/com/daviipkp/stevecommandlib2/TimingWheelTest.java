@@ -0,0 +1,161 @@
+package com.daviipkp.stevecommandlib2;
+
+import com.daviipkp.stevecommandlib2.instance.TriggeredCommand;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    static final class Check extends TriggeredCommand {
+        Check(long interval, boolean polling) {
+            setTimeBetweenChecks(interval);
+            setPolling(polling);
+        }
+
+        @Override
+        public boolean checkTrigger() {
+            return false;
+        }
+
+        @Override
+        public void handleError(Exception e) {
+        }
+    }
+
+    private static List<TriggerHandle> advance(TimingWheel wheel, long delta) {
+        List<TriggerHandle> due = new ArrayList<>();
+        wheel.advance(delta, due);
+        return due;
+    }
+
+    @Test
+    void triggerIsDueAfterItsInterval() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(5, true));
+
+        assertTrue(advance(wheel, 4).isEmpty());
+        assertEquals(List.of(handle), advance(wheel, 1));
+        assertEquals(5, wheel.elapsedSince(handle));
+    }
+
+    @Test
+    void rescheduledTriggerIsDueOneIntervalLater() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(3, true));
+        advance(wheel, 3);
+
+        wheel.reschedule(handle);
+        assertTrue(advance(wheel, 2).isEmpty());
+        assertEquals(List.of(handle), advance(wheel, 1));
+    }
+
+    @Test
+    void intervalLongerThanOneRevolutionWaitsForItsDeadline() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(5000, true));
+
+        // the slot comes around after 904 ms, but the deadline is a revolution later
+        assertTrue(advance(wheel, 4096).isEmpty());
+        assertTrue(advance(wheel, 903).isEmpty());
+        assertEquals(List.of(handle), advance(wheel, 1));
+    }
+
+    @Test
+    void largeDeltaCatchesUpEveryDueTrigger() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle a = wheel.register(new Check(10, true));
+        TriggerHandle b = wheel.register(new Check(20_000, true));
+
+        List<TriggerHandle> due = advance(wheel, 50_000);
+        assertTrue(due.contains(a));
+        assertTrue(due.contains(b));
+    }
+
+    @Test
+    void cancelledTriggerIsNeverDue() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(5, true));
+        advance(wheel, 1);
+
+        assertTrue(handle.cancel());
+        assertFalse(handle.cancel());
+        assertEquals(0, wheel.size(), "a cancelled trigger frees its room right away");
+        assertTrue(advance(wheel, 10).isEmpty());
+        assertTrue(handle.isDone());
+    }
+
+    @Test
+    void triggerCancelledBeforeItWasPlacedIsDropped() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(5, true));
+        handle.cancel();
+
+        assertTrue(advance(wheel, 10).isEmpty());
+        assertTrue(handle.isDone());
+    }
+
+    @Test
+    void eventOnlyTriggerIsParked() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(1, false));
+
+        assertTrue(advance(wheel, 10_000).isEmpty());
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.detach(handle));
+        assertFalse(wheel.detach(handle), "a detached trigger is out of the wheel until it's rescheduled");
+    }
+
+    @Test
+    void detachNeedsTheTriggerToBePlaced() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(1, false));
+
+        assertFalse(wheel.detach(handle));
+        wheel.applyPending();
+        assertTrue(wheel.detach(handle));
+    }
+
+    @Test
+    void completedTriggerLeavesTheWheel() {
+        TimingWheel wheel = new TimingWheel();
+        TriggerHandle handle = wheel.register(new Check(5, true));
+        advance(wheel, 5);
+
+        wheel.complete(handle);
+        assertTrue(handle.isDone());
+        assertEquals(0, wheel.size());
+        assertFalse(handle.cancel());
+    }
+
+    @Test
+    void tryReserveStopsAtCapacity() {
+        TimingWheel wheel = new TimingWheel(2, false);
+        assertTrue(wheel.tryReserve());
+        TriggerHandle first = wheel.registerReserved(new Check(5, true));
+        assertTrue(wheel.tryReserve());
+        wheel.registerReserved(new Check(5, true));
+
+        assertFalse(wheel.tryReserve());
+        assertFalse(wheel.awaitSpace(1_000_000));
+        first.cancel();
+        assertTrue(wheel.awaitSpace(0));
+        assertTrue(wheel.tryReserve());
+    }
+
+    @Test
+    void dropOldestCancelsInRegistrationOrder() {
+        TimingWheel wheel = new TimingWheel(3, true);
+        TriggerHandle first = wheel.register(new Check(5, true));
+        TriggerHandle second = wheel.register(new Check(5, true));
+        wheel.register(new Check(5, true));
+
+        assertSame(first, wheel.dropOldest());
+        assertTrue(first.isCancelled());
+        assertSame(second, wheel.dropOldest());
+        assertEquals(1, wheel.size());
+    }
+}
@@ -0,0 +1,241 @@
+package com.daviipkp.stevecommandlib2.instance;
+
+import com.daviipkp.stevecommandlib2.QueueScheduling;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandQueueTest {
+
+    static final class Step extends QueuedCommand {
+        final int id;
+
+        Step(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void handleError(Exception e) {
+        }
+    }
+
+    private static List<Integer> drain(CommandQueue queue) {
+        List<Integer> ids = new ArrayList<>();
+        QueuedCommand command;
+        while ((command = queue.poll()) != null) {
+            ids.add(((Step) command).id);
+        }
+        return ids;
+    }
+
+    @Test
+    void pollsInArrivalOrder() {
+        CommandQueue queue = new CommandQueue();
+        for (int i = 0; i < 5; i++) queue.offer(new Step(i));
+
+        assertEquals(5, queue.size());
+        assertEquals(List.of(0, 1, 2, 3, 4), drain(queue));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void commandCanBeQueuedAgainOnceItLeft() {
+        CommandQueue queue = new CommandQueue();
+        Step step = new Step(0);
+        queue.offer(step);
+
+        assertThrows(IllegalStateException.class, () -> queue.offer(step));
+        assertSame(step, queue.poll());
+        queue.offer(step);
+        assertSame(step, queue.poll());
+    }
+
+    @Test
+    void tryOfferRefusesPastCapacity() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.FIFO, 0, 2);
+
+        assertTrue(queue.tryOffer(new Step(0)));
+        assertTrue(queue.tryOffer(new Step(1)));
+        Step refused = new Step(2);
+        assertFalse(queue.tryOffer(refused));
+        assertEquals(2, queue.size());
+
+        queue.poll();
+        assertTrue(queue.tryOffer(refused), "a refused command is not left marked as queued");
+        assertEquals(List.of(1, 2), drain(queue));
+    }
+
+    @Test
+    void dropOldestSkipsTheSelectedHead() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.FIFO, 0, 3);
+        for (int i = 0; i < 3; i++) queue.tryOffer(new Step(i));
+        QueuedCommand head = queue.peek();
+
+        assertTrue(queue.dropOldest());
+        assertEquals(2, queue.size());
+        assertTrue(queue.tryOffer(new Step(3)));
+        assertSame(head, queue.peek());
+        assertEquals(List.of(0, 2, 3), drain(queue));
+    }
+
+    @Test
+    void dropOldestFailsWhenOnlyTheHeadIsLeft() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.FIFO, 0, 1);
+        queue.tryOffer(new Step(0));
+        queue.peek();
+
+        assertFalse(queue.dropOldest());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void removeHeadOnlyTakesTheExpectedCommand() {
+        CommandQueue queue = new CommandQueue();
+        Step first = new Step(0);
+        Step second = new Step(1);
+        queue.offer(first);
+        queue.offer(second);
+
+        assertFalse(queue.removeHead(second));
+        assertTrue(queue.removeHead(first));
+        assertSame(second, queue.peek());
+    }
+
+    @Test
+    void snapshotSkipsDroppedCommands() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.FIFO, 0, 3);
+        for (int i = 0; i < 3; i++) queue.tryOffer(new Step(i));
+        queue.dropOldest();
+
+        List<Integer> ids = new ArrayList<>();
+        for (QueuedCommand command : queue.snapshot()) ids.add(((Step) command).id);
+        assertEquals(List.of(1, 2), ids);
+    }
+
+    @Test
+    void awaitBelowTimesOutWhileFull() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.FIFO, 0, 2);
+        queue.tryOffer(new Step(0));
+
+        assertTrue(queue.awaitSpace(0));
+        assertFalse(queue.awaitBelow(1, TimeUnit.MILLISECONDS.toNanos(20)));
+    }
+
+    @Test
+    void awaitSpaceWakesUpWhenACommandLeaves() throws InterruptedException {
+        CommandQueue queue = new CommandQueue(QueueScheduling.FIFO, 0, 1);
+        queue.tryOffer(new Step(0));
+        CountDownLatch waiting = new CountDownLatch(1);
+        boolean[] result = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            waiting.countDown();
+            result[0] = queue.awaitSpace(TimeUnit.SECONDS.toNanos(10));
+        });
+        waiter.start();
+        waiting.await();
+
+        queue.poll();
+        waiter.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(waiter.isAlive());
+        assertTrue(result[0]);
+    }
+
+    @Test
+    void priorityQueueTakesHighestFirstAndFifoAmongEquals() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.PRIORITY, 0, Integer.MAX_VALUE);
+        int[] priorities = {0, 5, 0, 9, 5};
+        for (int i = 0; i < priorities.length; i++) {
+            Step step = new Step(i);
+            step.setPriority(priorities[i]);
+            queue.offer(step);
+        }
+
+        assertEquals(List.of(3, 1, 4, 0, 2), drain(queue));
+    }
+
+    @Test
+    void priorityQueueKeepsTheSelectedHead() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.PRIORITY, 0, Integer.MAX_VALUE);
+        queue.offer(new Step(0));
+        QueuedCommand head = queue.peek();
+        Step urgent = new Step(1);
+        urgent.setPriority(100);
+        queue.offer(urgent);
+
+        assertSame(head, queue.peek(), "a command that was handed out is not preempted");
+        assertEquals(List.of(0, 1), drain(queue));
+    }
+
+    @Test
+    void deadlineQueueTakesEarliestDeadlineFirst() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.DEADLINE, 0, Integer.MAX_VALUE);
+        Step none = new Step(0);
+        Step late = new Step(1);
+        late.setDeadline(Duration.ofSeconds(10));
+        Step soon = new Step(2);
+        soon.setDeadline(Duration.ofMillis(10));
+        queue.offer(none);
+        queue.offer(late);
+        queue.offer(soon);
+
+        assertEquals(List.of(2, 1, 0), drain(queue));
+    }
+
+    @Test
+    void dropOldestInOrderedQueueDropsTheFirstArrival() {
+        CommandQueue queue = new CommandQueue(QueueScheduling.PRIORITY, 0, 3);
+        for (int i = 0; i < 3; i++) {
+            Step step = new Step(i);
+            step.setPriority(i);
+            queue.tryOffer(step);
+        }
+        queue.peek();
+
+        assertTrue(queue.dropOldest());
+        assertEquals(List.of(2, 1), drain(queue));
+    }
+
+    @Test
+    void concurrentProducersLoseNothing() throws InterruptedException {
+        CommandQueue queue = new CommandQueue();
+        int producers = 4;
+        int perProducer = 10_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) queue.offer(new Step(base + i));
+            });
+            threads[p].start();
+        }
+
+        Set<Integer> seen = new HashSet<>();
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            QueuedCommand command = queue.poll();
+            if (command == null) continue;
+            int id = ((Step) command).id;
+            assertTrue(seen.add(id), "command " + id + " came out twice");
+            // each producer's commands keep their order
+            int producer = id / perProducer;
+            assertTrue(id > last[producer]);
+            last[producer] = id;
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(producers * perProducer, seen.size());
+        assertTrue(queue.isEmpty());
+    }
+}